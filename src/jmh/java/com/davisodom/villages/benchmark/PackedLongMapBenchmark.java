@@ -0,0 +1,116 @@
+package com.davisodom.villages.benchmark;
+
+import com.davisodom.villages.locator.PackedLongMap;
+import net.minecraft.world.level.ChunkPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert, lookup and eviction costs of the index's result table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedLongMapBenchmark {
+    // A power of two, so key indices can wrap with a mask
+    private static final int KEYS = 1 << 16;
+    private static final long TTL = TimeUnit.DAYS.toMillis(7);
+
+    @Param({"10000", "250000"})
+    public int entries;
+
+    private long[] keys;
+    private long[] missingKeys;
+    private PackedLongMap map;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        keys = new long[entries];
+        for (int i = 0; i < entries; i++) {
+            // Cells spread over a large explored area, as the index sees them
+            keys[i] = ChunkPos.asLong(random.nextInt(4096) - 2048, random.nextInt(4096) - 2048);
+        }
+        missingKeys = new long[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            missingKeys[i] = ChunkPos.asLong(random.nextInt(4096) + 10000, random.nextInt(4096) + 10000);
+        }
+
+        map = new PackedLongMap(Long.MAX_VALUE);
+        fill(map);
+    }
+
+    private void fill(PackedLongMap target) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.length; i++) {
+            // One in ten entries is a found structure, which is never evicted
+            target.put(keys[i], i, i % 10 == 0, now);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public PackedLongMap insert() {
+        PackedLongMap fresh = new PackedLongMap(Long.MAX_VALUE);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < KEYS; i++) {
+            fresh.put(missingKeys[i], i, false, now);
+        }
+        return fresh;
+    }
+
+    @Benchmark
+    public long lookupHit() {
+        next = (next + 1) % keys.length;
+        long key = keys[next];
+        return map.get(key, System.currentTimeMillis(), TTL);
+    }
+
+    @Benchmark
+    public long lookupMiss() {
+        long key = missingKeys[next++ & (KEYS - 1)];
+        return map.get(key, System.currentTimeMillis(), TTL);
+    }
+
+    /**
+     * A map refilled before each iteration. Eviction empties it, so it can only be measured
+     * once per fill; refilling per invocation would cost far more than the eviction itself.
+     */
+    @State(Scope.Thread)
+    public static class Eviction {
+        PackedLongMap map;
+
+        @Setup(Level.Iteration)
+        public void setUp(PackedLongMapBenchmark benchmark) {
+            map = new PackedLongMap(Long.MAX_VALUE);
+            benchmark.fill(map);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public int evictHalf(Eviction eviction) {
+        return eviction.map.evict(entries / 2, System.currentTimeMillis(), TTL);
+    }
+}
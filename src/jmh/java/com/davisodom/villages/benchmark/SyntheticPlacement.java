@@ -0,0 +1,54 @@
+package com.davisodom.villages.benchmark;
+
+import com.davisodom.villages.locator.IndexedStructure;
+import com.davisodom.villages.locator.PlacementGridLocator;
+import com.davisodom.villages.locator.VillageIndex;
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.levelgen.structure.placement.RandomSpreadStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.RandomSpreadType;
+
+/**
+ * A stand-in for a level's structure placement, so benchmarks can walk the same placement
+ * grid as the locator without a running game.
+ * <p>
+ * Candidates come from a real village placement and seed. Whether a candidate actually
+ * holds a village is decided by a hash of its position instead of biome and start checks,
+ * at roughly the rate villages pass them in a typical overworld.
+ */
+final class SyntheticPlacement {
+    static final long SEED = 8675309L;
+    static final String SET_ID = "minecraft:villages";
+    static final ResourceLocation VILLAGE = ResourceLocation.withDefaultNamespace("village_plains");
+    // Vanilla village spacing, separation and salt
+    static final RandomSpreadStructurePlacement PLACEMENT =
+        new RandomSpreadStructurePlacement(34, 8, RandomSpreadType.LINEAR, 10387312);
+
+    private SyntheticPlacement() {}
+
+    static boolean hasVillage(ChunkPos candidate) {
+        return (HashCommon.mix(candidate.toLong() ^ SEED) & 3) == 0;
+    }
+
+    /**
+     * Fills an index the way a search around a position would, evaluating every cell in range.
+     *
+     * @return The number of cells evaluated
+     */
+    static int fill(VillageIndex index, BlockPos origin, int radius) {
+        int[] evaluated = new int[1];
+        int maxRing = PlacementGridLocator.maxRing(PLACEMENT, radius);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            PlacementGridLocator.forEachCandidate(PLACEMENT, SEED, origin, ring, radius,
+                (cellX, cellZ) -> index.isCellEvaluated(SET_ID, cellX, cellZ),
+                (cellX, cellZ, candidate, locatePos) -> {
+                    index.recordCell(SET_ID, cellX, cellZ,
+                        hasVillage(candidate) ? new IndexedStructure(locatePos, VILLAGE) : null);
+                    evaluated[0]++;
+                });
+        }
+        return evaluated[0];
+    }
+}
@@ -0,0 +1,84 @@
+package com.davisodom.villages.benchmark;
+
+import com.davisodom.villages.Config;
+import com.davisodom.villages.locator.IndexedStructure;
+import com.davisodom.villages.locator.VillageIndex;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The spatial query path and index fill of a search, driven by a {@link SyntheticPlacement}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VillageIndexBenchmark {
+    // The explored area the query benchmarks search in
+    private static final int INDEXED_RADIUS = 20000;
+    private static final int ORIGINS = 1024;
+    private static final Set<ResourceLocation> TYPES = Set.of(SyntheticPlacement.VILLAGE);
+
+    @Param({"1000", "4000"})
+    public int radius;
+
+    @Param({"3", "16"})
+    public int limit;
+
+    private VillageIndex index;
+    private BlockPos[] origins;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Keep every result, as a freshly started server would
+        Config.villageIndexEntryTtlMinutes = 0;
+        Config.villageIndexMaxEntries = Integer.MAX_VALUE;
+
+        index = new VillageIndex();
+        SyntheticPlacement.fill(index, BlockPos.ZERO, INDEXED_RADIUS);
+
+        Random random = new Random(42);
+        origins = new BlockPos[ORIGINS];
+        int range = INDEXED_RADIUS - radius;
+        for (int i = 0; i < ORIGINS; i++) {
+            origins[i] = new BlockPos(random.nextInt(2 * range) - range, 64, random.nextInt(2 * range) - range);
+        }
+    }
+
+    @Benchmark
+    public List<IndexedStructure> findNearest() {
+        return index.findNearest(origins[next++ & (ORIGINS - 1)], radius, limit, TYPES);
+    }
+
+    @Benchmark
+    public int fillUncovered() {
+        // Everything is evaluated, as for a search in an unexplored area
+        return SyntheticPlacement.fill(new VillageIndex(), origins[next++ & (ORIGINS - 1)], radius);
+    }
+
+    @Benchmark
+    public int planCovered() {
+        // Every cell is skipped, as for a repeat search in an explored area
+        return SyntheticPlacement.fill(index, origins[next++ & (ORIGINS - 1)], radius);
+    }
+}
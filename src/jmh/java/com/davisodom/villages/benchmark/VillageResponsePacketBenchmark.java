@@ -0,0 +1,76 @@
+package com.davisodom.villages.benchmark;
+
+import com.davisodom.villages.network.VillageResponsePacket;
+import io.netty.buffer.Unpooled;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.world.level.ChunkPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode costs of a search response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VillageResponsePacketBenchmark {
+    @Param({"3", "16", "64"})
+    public int villages;
+
+    private VillageResponsePacket packet;
+    private FriendlyByteBuf encodeBuffer;
+    private FriendlyByteBuf decodeBuffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        ChunkPos anchor = new ChunkPos(120, -340);
+        List<BlockPos> positions = new ArrayList<>();
+        int[] typeIds = new int[villages];
+        for (int i = 0; i < villages; i++) {
+            // Located villages sit on chunk corners within a few hundred chunks of the requester
+            int chunkX = anchor.x + random.nextInt(250) - 125;
+            int chunkZ = anchor.z + random.nextInt(250) - 125;
+            positions.add(new BlockPos(chunkX << 4, 0, chunkZ << 4));
+            typeIds[i] = random.nextInt(4);
+        }
+        packet = new VillageResponsePacket(7, VillageResponsePacket.Status.FOUND, true, 2000, villages,
+            anchor, positions, typeIds, List.of());
+
+        encodeBuffer = new FriendlyByteBuf(Unpooled.buffer(1024));
+        decodeBuffer = new FriendlyByteBuf(Unpooled.buffer(1024));
+        packet.encode(decodeBuffer);
+    }
+
+    @Benchmark
+    public int encode() {
+        encodeBuffer.clear();
+        packet.encode(encodeBuffer);
+        return encodeBuffer.writerIndex();
+    }
+
+    @Benchmark
+    public VillageResponsePacket decode() {
+        decodeBuffer.readerIndex(0);
+        return VillageResponsePacket.decode(decodeBuffer);
+    }
+}
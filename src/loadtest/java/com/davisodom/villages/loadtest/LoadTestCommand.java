@@ -0,0 +1,70 @@
+package com.davisodom.villages.loadtest;
+
+import com.davisodom.villages.Villages;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.DoubleArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import net.minecraft.ChatFormatting;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+/**
+ * Adds {@code /villages loadtest} alongside the other operator commands under {@code /villages}.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class LoadTestCommand {
+    // How far from the operator simulated players are spread by default, in blocks
+    private static final int DEFAULT_SPREAD = 2000;
+
+    @SubscribeEvent
+    public static void onRegisterCommands(RegisterCommandsEvent event) {
+        register(event.getDispatcher());
+    }
+
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(
+            Commands.literal("villages")
+                .requires(source -> source.hasPermission(2))
+                .then(Commands.literal("loadtest")
+                    .then(Commands.literal("stop")
+                        .executes(LoadTestCommand::stop))
+                    .then(Commands.argument("players", IntegerArgumentType.integer(1, 1000))
+                        .then(Commands.argument("requestsPerSecond", DoubleArgumentType.doubleArg(0.01, 20))
+                            .then(Commands.argument("seconds", IntegerArgumentType.integer(1, 600))
+                                .executes(context -> start(context, DEFAULT_SPREAD))
+                                .then(Commands.argument("spread", IntegerArgumentType.integer(0, 30000))
+                                    .executes(context -> start(context,
+                                        IntegerArgumentType.getInteger(context, "spread"))))))))
+        );
+    }
+
+    private static int start(CommandContext<CommandSourceStack> context, int spread) {
+        CommandSourceStack source = context.getSource();
+        SearchLoadTest.Settings settings = new SearchLoadTest.Settings(
+            IntegerArgumentType.getInteger(context, "players"),
+            DoubleArgumentType.getDouble(context, "requestsPerSecond"),
+            IntegerArgumentType.getInteger(context, "seconds"),
+            spread);
+        if (!SearchLoadTest.start(source, settings)) {
+            source.sendFailure(Component.literal("A load test is already running. Use /villages loadtest stop to end it."));
+            return 0;
+        }
+        source.sendSuccess(() -> Component.literal(String.format(
+            "Load test started with %d players. Results are reported when it finishes.", settings.players()))
+            .withStyle(ChatFormatting.GREEN), true);
+        return 1;
+    }
+
+    private static int stop(CommandContext<CommandSourceStack> context) {
+        if (!SearchLoadTest.stop()) {
+            context.getSource().sendFailure(Component.literal("No load test is running."));
+            return 0;
+        }
+        return 1;
+    }
+}
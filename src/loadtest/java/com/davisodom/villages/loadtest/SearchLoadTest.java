@@ -0,0 +1,388 @@
+package com.davisodom.villages.loadtest;
+
+import com.davisodom.villages.Config;
+import com.davisodom.villages.Villages;
+import com.davisodom.villages.locator.LocatorService;
+import com.davisodom.villages.network.FindVillagesRequestPacket;
+import com.davisodom.villages.network.RequestLimiter;
+import com.davisodom.villages.network.StructureTypeDictionary;
+import com.davisodom.villages.network.VillageResponsePacket;
+import com.mojang.authlib.GameProfile;
+import com.mojang.logging.LogUtils;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.ChatFormatting;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.tags.StructureTags;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraftforge.common.util.FakePlayer;
+import net.minecraftforge.common.util.FakePlayerFactory;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * A headless load test of the whole village search path, run with {@code /villages loadtest}.
+ * <p>
+ * Simulated players are spread around the operator and each issue search requests at a fixed
+ * rate. Requests go through the packet codec and the same handler as real ones, including the
+ * rate limiter, the locator pool and the reply scheduled back onto the server thread; only the
+ * final send to a connection is replaced by recording the response. The test measures tick
+ * time and allocation rate with no requests, then again under load, and reports response
+ * latency percentiles once outstanding searches have drained.
+ * <p>
+ * Tick time is taken from the first tick start listener to the last tick end listener, so it
+ * includes the search work the locator runs at the end of the tick.
+ * <p>
+ * This is a development tool and is not part of the mod jar; it is only loaded by the client
+ * and server runs. Only touched on the server thread.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class SearchLoadTest {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    // Wait at most this long for the players' chunks to load before measuring
+    private static final int MAX_WARMUP_TICKS = 1200;
+    private static final int BASELINE_TICKS = 100;
+    private static final int DRAIN_TICKS = 200;
+    // Keeps the chunks around each simulated player loaded, as a real player's would be
+    private static final int TICKET_DISTANCE = 2;
+
+    @Nullable
+    private static SearchLoadTest running;
+
+    public record Settings(int players, double requestsPerSecond, int seconds, int spread) {}
+
+    private enum Phase {
+        WARMUP,
+        BASELINE,
+        LOAD,
+        DRAIN
+    }
+
+    private final CommandSourceStack source;
+    private final ServerLevel level;
+    private final Settings settings;
+    private final List<FakePlayer> players = new ArrayList<>();
+    private final List<ChunkPos> tickets = new ArrayList<>();
+    // Fractional requests owed to each player; starts randomised so requests don't all land on one tick
+    private final double[] owed;
+    private final FriendlyByteBuf codecBuffer = new FriendlyByteBuf(Unpooled.buffer());
+
+    private final Int2LongMap outstanding = new Int2LongOpenHashMap();
+    // Each player's latest request; a newer one supersedes it, as for a real player
+    private final int[] lastRequest;
+    private final LongArrayList latencies = new LongArrayList();
+    private final long[] rejected = new long[VillageResponsePacket.Status.values().length];
+    private int nextRequestId;
+    private int issued;
+    private int superseded;
+
+    private Phase phase = Phase.WARMUP;
+    private int phaseTicks;
+    private long tickStarted;
+    private final LongArrayList baselineTicks = new LongArrayList();
+    private final LongArrayList loadTicks = new LongArrayList();
+    private final AllocationSample[] samples = new AllocationSample[3];
+
+    // Bytes allocated by the server thread and by every live thread at an instant
+    private record AllocationSample(long nanos, long serverThread, long allThreads) {}
+
+    private SearchLoadTest(CommandSourceStack source, ServerLevel level, Settings settings) {
+        this.source = source;
+        this.level = level;
+        this.settings = settings;
+        this.owed = new double[settings.players()];
+        this.lastRequest = new int[settings.players()];
+    }
+
+    /**
+     * Starts a load test around the command source.
+     *
+     * @return false if a test is already running
+     */
+    public static boolean start(CommandSourceStack source, Settings settings) {
+        if (running != null) {
+            return false;
+        }
+        SearchLoadTest test = new SearchLoadTest(source, source.getLevel(), settings);
+        test.spawnPlayers();
+        running = test;
+        LOGGER.info("Started village search load test: {}", settings);
+        return true;
+    }
+
+    /**
+     * Stops the running load test early and reports what it measured so far.
+     *
+     * @return false if no test is running
+     */
+    public static boolean stop() {
+        SearchLoadTest test = running;
+        if (test == null) {
+            return false;
+        }
+        test.finish();
+        return true;
+    }
+
+    private void spawnPlayers() {
+        Random random = new Random();
+        int originX = (int) source.getPosition().x;
+        int originZ = (int) source.getPosition().z;
+        for (int i = 0; i < settings.players(); i++) {
+            // Stable identities, so repeated runs reuse the same cached fake players
+            UUID uuid = UUID.nameUUIDFromBytes(("villages_load_" + i).getBytes(StandardCharsets.UTF_8));
+            FakePlayer player = FakePlayerFactory.get(level, new GameProfile(uuid, "vload_" + i));
+
+            double angle = random.nextDouble() * Math.PI * 2;
+            double distance = Math.sqrt(random.nextDouble()) * settings.spread();
+            int x = originX + (int) (Math.cos(angle) * distance);
+            int z = originZ + (int) (Math.sin(angle) * distance);
+            player.setPos(x + 0.5, level.getSeaLevel(), z + 0.5);
+            players.add(player);
+            owed[i] = random.nextDouble();
+
+            ChunkPos chunk = new ChunkPos(player.blockPosition());
+            level.getChunkSource().addRegionTicket(TicketType.FORCED, chunk, TICKET_DISTANCE, chunk);
+            tickets.add(chunk);
+        }
+    }
+
+    private boolean chunksLoaded() {
+        for (FakePlayer player : players) {
+            ChunkPos chunk = player.chunkPosition();
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (!level.hasChunk(chunk.x + dx, chunk.z + dz)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private void issueRequests() {
+        double perTick = settings.requestsPerSecond() / 20.0;
+        for (int i = 0; i < players.size(); i++) {
+            owed[i] += perTick;
+            while (owed[i] >= 1) {
+                owed[i]--;
+                issue(i);
+            }
+        }
+    }
+
+    private void issue(int playerIndex) {
+        int requestId = ++nextRequestId;
+        if (outstanding.containsKey(lastRequest[playerIndex])) {
+            // The server drops the older search without answering it
+            outstanding.remove(lastRequest[playerIndex]);
+            superseded++;
+        }
+        lastRequest[playerIndex] = requestId;
+        FindVillagesRequestPacket request = new FindVillagesRequestPacket(requestId, Config.villageSearchRadius,
+            Config.villageSearchResults, StructureTags.VILLAGE, null);
+
+        // Round trip through the codec, as a request from a real client would
+        codecBuffer.clear();
+        request.encode(codecBuffer);
+        request = FindVillagesRequestPacket.decode(codecBuffer);
+
+        outstanding.put(requestId, System.nanoTime());
+        issued++;
+        request.handle(players.get(playerIndex), this::onResponse);
+    }
+
+    private void onResponse(VillageResponsePacket response) {
+        // Encode it as if it were sent, so the codec counts towards the measured cost
+        codecBuffer.clear();
+        response.encode(codecBuffer);
+
+        if (!response.isDone() || !outstanding.containsKey(response.getRequestId())) {
+            return;
+        }
+        long issuedAt = outstanding.remove(response.getRequestId());
+        if (response.getStatus() == VillageResponsePacket.Status.FOUND) {
+            latencies.add(System.nanoTime() - issuedAt);
+        } else {
+            rejected[response.getStatus().ordinal()]++;
+        }
+    }
+
+    private void onTickStart() {
+        tickStarted = System.nanoTime();
+        if (phase == Phase.LOAD) {
+            issueRequests();
+        }
+    }
+
+    private void onTickEnd() {
+        long tickNanos = System.nanoTime() - tickStarted;
+        phaseTicks++;
+        switch (phase) {
+            case WARMUP -> {
+                if (chunksLoaded() || phaseTicks >= MAX_WARMUP_TICKS) {
+                    enter(Phase.BASELINE);
+                    samples[0] = sampleAllocation();
+                }
+            }
+            case BASELINE -> {
+                baselineTicks.add(tickNanos);
+                if (phaseTicks >= BASELINE_TICKS) {
+                    enter(Phase.LOAD);
+                    samples[1] = sampleAllocation();
+                }
+            }
+            case LOAD -> {
+                loadTicks.add(tickNanos);
+                if (phaseTicks >= settings.seconds() * 20) {
+                    samples[2] = sampleAllocation();
+                    enter(Phase.DRAIN);
+                }
+            }
+            case DRAIN -> {
+                if (outstanding.isEmpty() || phaseTicks >= DRAIN_TICKS) {
+                    finish();
+                }
+            }
+        }
+    }
+
+    private void enter(Phase next) {
+        phase = next;
+        phaseTicks = 0;
+    }
+
+    @Nullable
+    private static AllocationSample sampleAllocation() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+            || !threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        long all = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            // Threads that died in between report -1
+            all += Math.max(0, allocated);
+        }
+        return new AllocationSample(System.nanoTime(), threads.getCurrentThreadAllocatedBytes(), all);
+    }
+
+    private void finish() {
+        running = null;
+        if (samples[1] != null && samples[2] == null) {
+            // Stopped early, during the load phase
+            samples[2] = sampleAllocation();
+        }
+
+        LocatorService locator = LocatorService.get();
+        for (FakePlayer player : players) {
+            if (locator != null) {
+                locator.cancel(player.getUUID());
+            }
+            RequestLimiter.forget(player.getUUID());
+            StructureTypeDictionary.forget(player.getUUID());
+        }
+        for (ChunkPos chunk : tickets) {
+            level.getChunkSource().removeRegionTicket(TicketType.FORCED, chunk, TICKET_DISTANCE, chunk);
+        }
+        report();
+    }
+
+    private void report() {
+        long[] sorted = latencies.toLongArray();
+        Arrays.sort(sorted);
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%d players at %.2f requests/s each for %ds, spread over %d blocks",
+            settings.players(), settings.requestsPerSecond(), settings.seconds(), settings.spread()));
+        lines.add(String.format("Requests: %d issued, %d answered, %d superseded, %d unanswered",
+            issued, sorted.length, superseded, outstanding.size()));
+        lines.add(String.format("Rejected: %d rate limited, %d busy, %d world not generated",
+            rejected[VillageResponsePacket.Status.RATE_LIMITED.ordinal()],
+            rejected[VillageResponsePacket.Status.BUSY.ordinal()],
+            rejected[VillageResponsePacket.Status.NEW_WORLD.ordinal()]));
+        lines.add(String.format("Response latency: p50 %.1fms, p99 %.1fms, max %.1fms",
+            percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6,
+            sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1e6));
+
+        long[] baseline = baselineTicks.toLongArray();
+        long[] load = loadTicks.toLongArray();
+        Arrays.sort(baseline);
+        Arrays.sort(load);
+        lines.add(String.format("Tick time: %.2fms mean, %.2fms p99 idle; %.2fms mean, %.2fms p99 under load",
+            mean(baseline) / 1e6, percentile(baseline, 99) / 1e6, mean(load) / 1e6, percentile(load, 99) / 1e6));
+
+        if (samples[0] != null && samples[1] != null && samples[2] != null) {
+            lines.add(String.format("Allocation: server thread %.1f MB/s idle, %.1f MB/s under load; all threads %.1f MB/s idle, %.1f MB/s under load",
+                rate(samples[0], samples[1], true), rate(samples[1], samples[2], true),
+                rate(samples[0], samples[1], false), rate(samples[1], samples[2], false)));
+        } else {
+            lines.add("Allocation: not measured, thread allocation accounting is unavailable");
+        }
+
+        source.sendSuccess(() -> Component.literal("=== Village Search Load Test ===").withStyle(ChatFormatting.GREEN), true);
+        for (String line : lines) {
+            source.sendSuccess(() -> Component.literal(line), true);
+            LOGGER.info("Load test: {}", line);
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(sorted.length * percentile / 100.0);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static double mean(long[] values) {
+        return values.length == 0 ? 0 : (double) Arrays.stream(values).sum() / values.length;
+    }
+
+    // In megabytes per second between two samples
+    private static double rate(AllocationSample from, AllocationSample to, boolean serverThread) {
+        long bytes = serverThread ? to.serverThread() - from.serverThread() : to.allThreads() - from.allThreads();
+        double seconds = (to.nanos() - from.nanos()) / 1e9;
+        return seconds <= 0 ? 0 : Math.max(0, bytes) / seconds / (1024 * 1024);
+    }
+
+    @SubscribeEvent(priority = EventPriority.HIGHEST)
+    public static void onServerTickStart(TickEvent.ServerTickEvent event) {
+        SearchLoadTest test = running;
+        if (test != null && event.phase == TickEvent.Phase.START) {
+            test.onTickStart();
+        }
+    }
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onServerTickEnd(TickEvent.ServerTickEvent event) {
+        SearchLoadTest test = running;
+        if (test != null && event.phase == TickEvent.Phase.END) {
+            test.onTickEnd();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        running = null;
+    }
+}
@@ -1,35 +1,111 @@
 package com.davisodom.villages;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.mojang.logging.LogUtils;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.HolderGetter;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.util.BitStorage;
+import net.minecraft.util.SimpleBitStorage;
 import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate.StructureBlockInfo;
-import net.minecraftforge.registries.ForgeRegistries;
 import net.minecraft.resources.ResourceLocation;
+import org.slf4j.Logger;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * A building stored as a block-state palette and one bit-packed palette index per position.
+ * <p>
+ * Positions are ordered like chunk sections: x varies fastest, then z, then y. A blueprint
+ * costs a few bits per block however many blocks it spans, so many large blueprints can stay
+ * loaded at once. Use {@link #forEachBlock} to walk the blocks without allocating.
+ * <p>
+ * Positions that were never set hold {@link #VOID}. Placing a blueprint leaves the world as it
+ * is there, while positions set to air clear whatever was in the way.
+ */
 public class Blueprint {
-    private String name;
-    private int width;
-    private int height;
-    private int length;
-    private List<StructureBlockInfo> blockData;
+    private static final Logger LOGGER = LogUtils.getLogger();
 
+    /**
+     * The most positions a blueprint can span. Every format enforces it on load and every
+     * blueprint is built within it, so anything saved can be read back.
+     */
+    public static final int MAX_VOLUME = 1 << 24;
+
+    /**
+     * The state of positions that were never set. Structure templates leave structure voids
+     * out, so these positions keep whatever is already in the world when placed.
+     */
+    public static final BlockState VOID = Blocks.STRUCTURE_VOID.defaultBlockState();
+
+    private final String name;
+    private final int width;
+    private final int height;
+    private final int length;
+    private final BlockState[] palette;
+    private final BitStorage indices;
+
+    /**
+     * Receives each position of a blueprint with its block state.
+     */
+    @FunctionalInterface
+    public interface BlockVisitor {
+        void visit(int x, int y, int z, BlockState state);
+    }
+
+    /**
+     * Packs a list of blocks. Positions missing from the list are {@link #VOID}.
+     */
     public Blueprint(String name, int width, int height, int length, List<StructureBlockInfo> blockData) {
+        Builder builder = new Builder(name, width, height, length);
+        for (StructureBlockInfo info : blockData) {
+            builder.set(info.pos().getX(), info.pos().getY(), info.pos().getZ(), info.state());
+        }
+        Blueprint packed = builder.build();
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.palette = packed.palette;
+        this.indices = packed.indices;
+    }
+
+    /**
+     * @param indices One palette index per position, in chunk section order
+     */
+    Blueprint(String name, int width, int height, int length, BlockState[] palette, BitStorage indices) {
+        if (indices.getSize() != volume(width, height, length)) {
+            throw new IllegalArgumentException("Expected " + volume(width, height, length) + " indices, got " + indices.getSize());
+        }
         this.name = name;
         this.width = width;
         this.height = height;
         this.length = length;
-        this.blockData = blockData;
+        this.palette = palette;
+        this.indices = indices;
     }
 
     public String getName() {
@@ -48,8 +124,134 @@ public class Blueprint {
         return length;
     }
 
+    /**
+     * @return The distinct block states in the blueprint
+     */
+    public List<BlockState> getPalette() {
+        return Arrays.asList(palette.clone());
+    }
+
+    public BlockState getBlockState(int x, int y, int z) {
+        if (x < 0 || x >= width || y < 0 || y >= height || z < 0 || z >= length) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ", " + z + ") lies outside the blueprint");
+        }
+        return palette[indices.get(index(x, y, z))];
+    }
+
+    /**
+     * Visits every position of the blueprint, air included, in chunk section order.
+     */
+    public void forEachBlock(BlockVisitor visitor) {
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            for (int z = 0; z < length; z++) {
+                for (int x = 0; x < width; x++) {
+                    visitor.visit(x, y, z, palette[indices.get(i++)]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns every position of the blueprint as a list, for code that still expects
+     * structure block infos. Entries are created as they are read, so prefer
+     * {@link #forEachBlock} where possible.
+     */
     public List<StructureBlockInfo> getBlockData() {
-        return blockData;
+        return new AbstractList<>() {
+            @Override
+            public StructureBlockInfo get(int i) {
+                if (i < 0 || i >= indices.getSize()) {
+                    throw new IndexOutOfBoundsException(i);
+                }
+                BlockPos pos = new BlockPos(i % width, i / (width * length), (i / width) % length);
+                return new StructureBlockInfo(pos, palette[indices.get(i)], null);
+            }
+
+            @Override
+            public int size() {
+                return indices.getSize();
+            }
+        };
+    }
+
+    int getBitsPerIndex() {
+        return indices.getBits();
+    }
+
+    long[] getPackedIndices() {
+        return indices.getRaw();
+    }
+
+    private int index(int x, int y, int z) {
+        return (y * length + z) * width + x;
+    }
+
+    static int volume(int width, int height, int length) {
+        if (width < 1 || height < 1 || length < 1 || (long) width * height * length > MAX_VOLUME) {
+            throw new IllegalArgumentException("Invalid blueprint size " + width + "x" + height + "x" + length
+                + ", blueprints span 1 to " + MAX_VOLUME + " positions");
+        }
+        return width * height * length;
+    }
+
+    /**
+     * Collects blocks one position at a time, then packs them into a blueprint. Positions that
+     * are never set are {@link #VOID}.
+     * <p>
+     * Indices are packed as they are set, starting at one bit each and widening whenever the
+     * palette outgrows them, so building never holds more than the finished blueprint does.
+     */
+    public static class Builder {
+        private final String name;
+        private final int width;
+        private final int height;
+        private final int length;
+        private final List<BlockState> palette = new ArrayList<>();
+        private final Map<BlockState, Integer> paletteIds = new HashMap<>();
+        private SimpleBitStorage indices;
+
+        public Builder(String name, int width, int height, int length) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.length = length;
+            this.indices = new SimpleBitStorage(1, volume(width, height, length));
+            palette.add(VOID);
+            paletteIds.put(VOID, 0);
+        }
+
+        public Builder set(int x, int y, int z, BlockState state) {
+            if (x < 0 || x >= width || y < 0 || y >= height || z < 0 || z >= length) {
+                throw new IndexOutOfBoundsException("(" + x + ", " + y + ", " + z + ") lies outside the blueprint");
+            }
+            Integer id = paletteIds.get(state);
+            if (id == null) {
+                id = palette.size();
+                palette.add(state);
+                paletteIds.put(state, id);
+                if (id >= 1 << indices.getBits()) {
+                    widen();
+                }
+            }
+            indices.set((y * length + z) * width + x, id);
+            return this;
+        }
+
+        private void widen() {
+            SimpleBitStorage wider = new SimpleBitStorage(indices.getBits() + 1, indices.getSize());
+            for (int i = 0; i < indices.getSize(); i++) {
+                wider.set(i, indices.get(i));
+            }
+            indices = wider;
+        }
+
+        /**
+         * Packs the blocks set so far. The builder hands its indices over, so it must not be used afterwards.
+         */
+        public Blueprint build() {
+            return new Blueprint(name, width, height, length, palette.toArray(new BlockState[0]), indices);
+        }
     }
 
     public static Blueprint loadFromJson(String filePath) throws IOException {
@@ -58,50 +260,209 @@ public class Blueprint {
         }
     }
 
+    /**
+     * Reads a JSON blueprint token by token, packing each block as it is read. Each distinct
+     * block name is looked up in the registry once. Saved blueprints put the name and size
+     * before {@code blockData}; files that don't have their blocks held until the size is known.
+     */
     public static Blueprint loadFromJson(Reader reader) throws IOException {
-        JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-
-        String name = jsonObject.get("name").getAsString();
-        int width = jsonObject.get("width").getAsInt();
-        int height = jsonObject.get("height").getAsInt();
-        int length = jsonObject.get("length").getAsInt();
-
-        List<StructureBlockInfo> blockData = new ArrayList<>();
-        jsonObject.getAsJsonArray("blockData").forEach(element -> {
-            JsonObject blockInfoJson = element.getAsJsonObject();
-            BlockPos pos = new BlockPos(blockInfoJson.get("x").getAsInt(), 
-                                        blockInfoJson.get("y").getAsInt(), 
-                                        blockInfoJson.get("z").getAsInt());
-            String blockName = blockInfoJson.get("block").getAsString();
-            if (!blockName.contains(":")) {
-                blockName = "minecraft:" + blockName;
+        JsonReader json = new JsonReader(reader);
+        String name = null;
+        int width = -1;
+        int height = -1;
+        int length = -1;
+        Builder builder = null;
+        // Blocks read before the size, in the order they were read
+        List<StructureBlockInfo> pending = null;
+
+        try {
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "name" -> name = json.nextString();
+                    case "width" -> width = json.nextInt();
+                    case "height" -> height = json.nextInt();
+                    case "length" -> length = json.nextInt();
+                    case "blockData" -> {
+                        if (builder != null || pending != null) {
+                            throw new IOException("Blueprint " + name + " has more than one blockData");
+                        }
+                        if (name != null && width >= 0 && height >= 0 && length >= 0) {
+                            Builder sized = new Builder(name, width, height, length);
+                            readBlockData(json, sized::set);
+                            builder = sized;
+                        } else {
+                            List<StructureBlockInfo> blocks = new ArrayList<>();
+                            readBlockData(json, (x, y, z, state) -> blocks.add(new StructureBlockInfo(new BlockPos(x, y, z), state, null)));
+                            pending = blocks;
+                        }
+                    }
+                    default -> json.skipValue();
+                }
             }
-            ResourceLocation resourceLocation = ResourceLocation.tryParse(blockName);
-            if (resourceLocation == null) {
-                System.err.println("Invalid block identifier: " + blockName + " at " + pos);
-                resourceLocation = ResourceLocation.tryParse("minecraft:air");
+            json.endObject();
+
+            if (pending != null) {
+                if (name == null || width < 0 || height < 0 || length < 0) {
+                    throw new IOException("Blueprint " + name + " has no name or size");
+                }
+                builder = new Builder(name, width, height, length);
+                for (StructureBlockInfo info : pending) {
+                    builder.set(info.pos().getX(), info.pos().getY(), info.pos().getZ(), info.state());
+                }
             }
-            Block block = ForgeRegistries.BLOCKS.getValue(resourceLocation);
-            BlockState state = block.defaultBlockState();
-            blockData.add(new StructureBlockInfo(pos, state, null));
-        });
+        } catch (IllegalStateException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid blueprint " + name + ": " + e.getMessage(), e);
+        }
 
-        return new Blueprint(name, width, height, length, blockData);
+        if (builder == null) {
+            throw new IOException("Blueprint " + name + " has no blockData");
+        }
+        return builder.build();
+    }
+
+    private static void readBlockData(JsonReader json, BlockVisitor blocks) throws IOException {
+        Map<String, BlockState> states = new HashMap<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            int x = 0;
+            int y = 0;
+            int z = 0;
+            BlockState state = Blocks.AIR.defaultBlockState();
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "x" -> x = json.nextInt();
+                    case "y" -> y = json.nextInt();
+                    case "z" -> z = json.nextInt();
+                    case "block" -> state = states.computeIfAbsent(json.nextString(), Blueprint::resolveBlock);
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+            blocks.visit(x, y, z, state);
+        }
+        json.endArray();
+    }
+
+    private static BlockState resolveBlock(String blockName) {
+        if (!blockName.contains(":")) {
+            blockName = "minecraft:" + blockName;
+        }
+        ResourceLocation resourceLocation = ResourceLocation.tryParse(blockName);
+        if (resourceLocation == null) {
+            LOGGER.warn("Invalid block identifier in blueprint: {}", blockName);
+            return Blocks.AIR.defaultBlockState();
+        }
+        Block block = BuiltInRegistries.BLOCK.getValue(resourceLocation);
+        return block.defaultBlockState();
     }
 
     public void saveToJson(String filePath) throws IOException {
-        Gson gson = new Gson();
-        JsonObject jsonObject = new JsonObject();
+        try (FileWriter writer = new FileWriter(filePath)) {
+            saveToJson(writer);
+        }
+    }
 
-        jsonObject.addProperty("name", name);
-        jsonObject.addProperty("width", width);
-        jsonObject.addProperty("height", height);
-        jsonObject.addProperty("length", length);
+    /**
+     * Writes the blueprint as pretty-printed JSON, one block at a time.
+     */
+    public void saveToJson(Writer writer) throws IOException {
+        Map<BlockState, String> blockNames = new IdentityHashMap<>();
+        for (BlockState state : palette) {
+            blockNames.put(state, BuiltInRegistries.BLOCK.getKey(state.getBlock()).toString());
+        }
 
-        jsonObject.add("blockData", gson.toJsonTree(blockData));
+        JsonWriter json = new JsonWriter(writer);
+        json.setIndent("  ");
+        json.beginObject();
+        json.name("name").value(name);
+        json.name("width").value(width);
+        json.name("height").value(height);
+        json.name("length").value(length);
 
-        try (FileWriter writer = new FileWriter(filePath)) {
-            gson.toJson(jsonObject, writer);
+        json.name("blockData").beginArray();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    json.beginObject();
+                    json.name("x").value(x);
+                    json.name("y").value(y);
+                    json.name("z").value(z);
+                    json.name("block").value(blockNames.get(palette[indices.get(index(x, y, z))]));
+                    json.endObject();
+                }
+            }
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    public static Blueprint loadFromBinary(String filePath) throws IOException {
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(filePath))) {
+            return loadFromBinary(stream);
+        }
+    }
+
+    /**
+     * Reads a blueprint in the palette-compressed {@link BlueprintBinaryFormat}.
+     */
+    public static Blueprint loadFromBinary(InputStream stream) throws IOException {
+        return BlueprintBinaryFormat.read(stream);
+    }
+
+    /**
+     * Writes the blueprint in the palette-compressed {@link BlueprintBinaryFormat}.
+     *
+     * @param compress Whether to deflate the palette and block indices
+     */
+    public void saveToBinary(String filePath, boolean compress) throws IOException {
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(filePath))) {
+            BlueprintBinaryFormat.write(this, stream, compress);
+        }
+    }
+
+    /**
+     * Reads a blueprint from a vanilla structure template file, named after the file.
+     */
+    public static Blueprint loadFromStructure(String filePath) throws IOException {
+        String fileName = Path.of(filePath).getFileName().toString();
+        String name = fileName.endsWith(BlueprintStructureFormat.EXTENSION)
+            ? fileName.substring(0, fileName.length() - BlueprintStructureFormat.EXTENSION.length())
+            : fileName;
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(filePath))) {
+            return BlueprintStructureFormat.read(name, stream, BuiltInRegistries.BLOCK);
+        }
+    }
+
+    /**
+     * Writes the blueprint as a vanilla structure template, which structure blocks can load.
+     */
+    public void saveToStructure(String filePath) throws IOException {
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(filePath))) {
+            BlueprintStructureFormat.write(this, stream);
+        }
+    }
+
+    /**
+     * Builds a structure template holding the blueprint, for placing it in bulk with
+     * {@link StructureTemplate#placeInWorld}.
+     */
+    public StructureTemplate toStructureTemplate(HolderGetter<Block> blocks) {
+        return BlueprintStructureFormat.toTemplate(this, blocks);
+    }
+
+    /**
+     * Reads a blueprint in whichever format its file extension names: JSON, binary or structure template.
+     */
+    public static Blueprint load(String filePath) throws IOException {
+        if (filePath.endsWith(BlueprintBinaryFormat.EXTENSION)) {
+            return loadFromBinary(filePath);
+        }
+        if (filePath.endsWith(BlueprintStructureFormat.EXTENSION)) {
+            return loadFromStructure(filePath);
         }
+        return loadFromJson(filePath);
     }
 }
@@ -0,0 +1,181 @@
+package com.davisodom.villages;
+
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.logging.LogUtils;
+import net.minecraft.commands.arguments.blocks.BlockStateParser;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.util.SimpleBitStorage;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads and writes blueprints in the binary {@code .vbp} format.
+ * <p>
+ * Where the JSON format spells out every block with its coordinates, a binary blueprint
+ * stores each distinct block state once in a palette and every position as a bit-packed
+ * palette index, the same layout chunk sections use. Positions are ordered by y, then z,
+ * then x, so they don't need to be stored at all. The body can be deflated, which shrinks
+ * blueprints that are mostly air to a few hundred bytes.
+ * <p>
+ * Layout: the magic {@code VBPT}, a version byte and a flags byte, followed by the body: the
+ * name, the width, height and length, the palette as block state strings, the bits per index,
+ * and the packed indices as longs.
+ */
+public final class BlueprintBinaryFormat {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public static final String EXTENSION = ".vbp";
+
+    private static final int MAGIC = 0x56425054;
+    private static final int VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+
+    private BlueprintBinaryFormat() {}
+
+    /**
+     * Writes a blueprint.
+     *
+     * @param compress Whether to deflate the body
+     */
+    public static void write(Blueprint blueprint, OutputStream stream, boolean compress) throws IOException {
+        DataOutputStream header = new DataOutputStream(stream);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(compress ? FLAG_COMPRESSED : 0);
+        header.flush();
+
+        // Ended explicitly, as a deflater passed in is never ended by its stream and holds native memory
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_COMPRESSION) : null;
+        try {
+            OutputStream bodyStream = deflater != null ? new DeflaterOutputStream(stream, deflater) : stream;
+            DataOutputStream body = new DataOutputStream(new BufferedOutputStream(bodyStream));
+            body.writeUTF(blueprint.getName());
+            body.writeInt(blueprint.getWidth());
+            body.writeInt(blueprint.getHeight());
+            body.writeInt(blueprint.getLength());
+            // Blueprints are already packed the same way, so their indices are written as they are
+            List<BlockState> palette = blueprint.getPalette();
+            body.writeInt(palette.size());
+            for (BlockState state : palette) {
+                body.writeUTF(BlockStateParser.serialize(state));
+            }
+            body.writeByte(blueprint.getBitsPerIndex());
+            long[] packed = blueprint.getPackedIndices();
+            body.writeInt(packed.length);
+            for (long value : packed) {
+                body.writeLong(value);
+            }
+            body.flush();
+            if (bodyStream instanceof DeflaterOutputStream deflaterStream) {
+                deflaterStream.finish();
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Reads a blueprint. Palette entries naming unknown blocks are read as air.
+     *
+     * @throws IOException If the stream isn't a valid blueprint of a supported version
+     */
+    public static Blueprint read(InputStream stream) throws IOException {
+        DataInputStream header = new DataInputStream(stream);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not a binary blueprint");
+        }
+        int version = header.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary blueprint version " + version);
+        }
+        int flags = header.readUnsignedByte();
+
+        Inflater inflater = (flags & FLAG_COMPRESSED) != 0 ? new Inflater() : null;
+        try {
+            InputStream bodyStream = inflater != null ? new InflaterInputStream(stream, inflater) : stream;
+            return readBody(new DataInputStream(new BufferedInputStream(bodyStream)));
+        } catch (RuntimeException e) {
+            // Whatever a corrupt file trips over, callers only have to handle IOException
+            throw new IOException("Invalid binary blueprint: " + e.getMessage(), e);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static Blueprint readBody(DataInputStream body) throws IOException {
+        String name = body.readUTF();
+        int width = body.readInt();
+        int height = body.readInt();
+        int length = body.readInt();
+        // Larger blueprints are rejected rather than risk allocating arrays for a corrupt header
+        int volume = volume(width, height, length);
+
+        int paletteSize = body.readInt();
+        if (paletteSize < 1 || paletteSize > volume + 1) {
+            throw new IOException("Invalid palette size " + paletteSize);
+        }
+        BlockState[] palette = new BlockState[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = parseState(body.readUTF());
+        }
+
+        // Check the stored length against the one the size implies before allocating anything for it
+        int bits = body.readUnsignedByte();
+        if (bits < 1 || bits > 32) {
+            throw new IOException("Invalid bits per index " + bits);
+        }
+        int valuesPerLong = 64 / bits;
+        int expectedLongs = (volume + valuesPerLong - 1) / valuesPerLong;
+        int packedLength = body.readInt();
+        if (packedLength != expectedLongs) {
+            throw new IOException("Expected " + expectedLongs + " packed longs, got " + packedLength);
+        }
+        long[] packed = new long[packedLength];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = body.readLong();
+        }
+        SimpleBitStorage storage = new SimpleBitStorage(bits, volume, packed);
+        for (int i = 0; i < volume; i++) {
+            if (storage.get(i) >= paletteSize) {
+                throw new IOException("Palette index " + storage.get(i) + " out of range");
+            }
+        }
+        return new Blueprint(name, width, height, length, palette, storage);
+    }
+
+    private static BlockState parseState(String state) {
+        try {
+            return BlockStateParser.parseForBlock(BuiltInRegistries.BLOCK, state, false).blockState();
+        } catch (CommandSyntaxException e) {
+            LOGGER.warn("Invalid block state {} in blueprint palette, using air: {}", state, e.getMessage());
+            return Blocks.AIR.defaultBlockState();
+        }
+    }
+
+    // The same limit blueprints are built with, reported as a malformed file
+    private static int volume(int width, int height, int length) throws IOException {
+        try {
+            return Blueprint.volume(width, height, length);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.davisodom.villages;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.mojang.logging.LogUtils;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.Resource;
+import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.server.packs.resources.SimplePreparableReloadListener;
+import net.minecraft.util.profiling.ProfilerFiller;
+import net.minecraftforge.event.AddReloadListenerEvent;
+import net.minecraftforge.event.server.ServerStartedEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.loading.FMLPaths;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The blueprints available to the server, by id.
+ * <p>
+ * Blueprints come from two places: {@code data/<namespace>/blueprints/} in data packs, with
+ * ids like {@code villages:example_blueprint}, and the {@code config/villages/blueprints}
+ * directory, whose files get ids in the {@code villages} namespace and override data pack
+ * blueprints of the same id. JSON, binary ({@code .vbp}) and structure template
+ * ({@code .nbt}) files are all accepted.
+ * <p>
+ * Both sources are read on {@code /reload}, and the config directory is also watched while
+ * the server runs, so edited files are picked up without a restart. Parsed blueprints are
+ * cached by a hash of their file contents, so a reload only parses files that changed.
+ * Lookups read an immutable snapshot and never block on a reload.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class BlueprintLibrary {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String DIRECTORY = "blueprints";
+    private static final String JSON_EXTENSION = ".json";
+    // How long to wait for a burst of file changes to settle before reloading
+    private static final long WATCH_SETTLE_MILLIS = 500;
+
+    // Guarded by the class lock; lookups only read the published snapshot
+    private static Source packs = Source.EMPTY;
+    private static Source config = Source.EMPTY;
+    // Bumped whenever a new view of the config directory is published
+    private static int configGeneration;
+    private static volatile Map<ResourceLocation, Blueprint> blueprints = Map.of();
+
+    @Nullable
+    private static WatchService watchService;
+
+    /**
+     * The blueprints loaded from one place.
+     *
+     * @param parsed Id, content hash and extension -> parsed blueprint, for the files currently loaded
+     */
+    private record Source(Map<ResourceLocation, Blueprint> blueprints, Map<String, Blueprint> parsed) {
+        static final Source EMPTY = new Source(Map.of(), Map.of());
+    }
+
+    /**
+     * @param configGeneration The config generation the directory was read after
+     */
+    private record Reload(Source packs, Source config, int configGeneration) {}
+
+    public static Optional<Blueprint> get(ResourceLocation id) {
+        return Optional.ofNullable(blueprints.get(id));
+    }
+
+    /**
+     * @return Every loaded blueprint by id
+     */
+    public static Map<ResourceLocation, Blueprint> all() {
+        return blueprints;
+    }
+
+    public static Path configDirectory() {
+        return FMLPaths.CONFIGDIR.get().resolve(Villages.MODID).resolve(DIRECTORY);
+    }
+
+    private static boolean isBlueprintFile(String path) {
+        String lowerCase = path.toLowerCase(Locale.ROOT);
+        return lowerCase.endsWith(JSON_EXTENSION) || lowerCase.endsWith(BlueprintBinaryFormat.EXTENSION)
+            || lowerCase.endsWith(BlueprintStructureFormat.EXTENSION);
+    }
+
+    private static String stripExtension(String path) {
+        return path.substring(0, path.lastIndexOf('.'));
+    }
+
+    // Reloads blueprints from data packs and the config directory on server start and /reload
+    private static class ReloadListener extends SimplePreparableReloadListener<Reload> {
+        @Override
+        protected Reload prepare(ResourceManager resourceManager, ProfilerFiller profiler) {
+            Map<String, Blueprint> previous;
+            Map<String, Blueprint> previousConfig;
+            int generation;
+            synchronized (BlueprintLibrary.class) {
+                previous = packs.parsed();
+                previousConfig = config.parsed();
+                generation = configGeneration;
+            }
+
+            Map<ResourceLocation, Blueprint> loaded = new HashMap<>();
+            Map<String, Blueprint> parsed = new HashMap<>();
+            for (Map.Entry<ResourceLocation, Resource> entry
+                    : resourceManager.listResources(DIRECTORY, location -> isBlueprintFile(location.getPath())).entrySet()) {
+                ResourceLocation location = entry.getKey();
+                ResourceLocation id = location.withPath(stripExtension(location.getPath().substring(DIRECTORY.length() + 1)));
+                try (InputStream stream = entry.getValue().open()) {
+                    loaded.put(id, parse(id, location.getPath(), stream.readAllBytes(), previous, parsed));
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Failed to load blueprint {} from {}", id, entry.getValue().sourcePackId(), e);
+                }
+            }
+            return new Reload(new Source(Map.copyOf(loaded), parsed), loadConfigDirectory(previousConfig), generation);
+        }
+
+        @Override
+        protected void apply(Reload reload, ResourceManager resourceManager, ProfilerFiller profiler) {
+            synchronized (BlueprintLibrary.class) {
+                packs = reload.packs();
+                // If the watcher published since this reload read the directory, its view is at least as new
+                if (configGeneration == reload.configGeneration()) {
+                    config = reload.config();
+                    configGeneration++;
+                }
+                publish();
+            }
+        }
+    }
+
+    /**
+     * Parses a blueprint file, or reuses the blueprint parsed from identical contents for the same id before.
+     * The id is part of the key because it names blueprints read from structure templates.
+     *
+     * @param previous What the last load of the same source parsed
+     * @param parsed   What this load has parsed so far; the file is added to it
+     */
+    private static Blueprint parse(ResourceLocation id, String fileName, byte[] contents,
+                                   Map<String, Blueprint> previous, Map<String, Blueprint> parsed) throws IOException {
+        String extension = fileName.substring(fileName.lastIndexOf('.')).toLowerCase(Locale.ROOT);
+        HashCode hash = Hashing.sha256().hashBytes(contents);
+        String key = id + "/" + hash + extension;
+
+        Blueprint blueprint = previous.get(key);
+        if (blueprint == null) {
+            blueprint = parsed.get(key);
+        }
+        if (blueprint == null) {
+            InputStream stream = new ByteArrayInputStream(contents);
+            blueprint = switch (extension) {
+                case BlueprintBinaryFormat.EXTENSION -> Blueprint.loadFromBinary(stream);
+                case BlueprintStructureFormat.EXTENSION -> BlueprintStructureFormat.read(id.getPath(), stream, BuiltInRegistries.BLOCK);
+                default -> Blueprint.loadFromJson(new InputStreamReader(stream, StandardCharsets.UTF_8));
+            };
+            LOGGER.debug("Parsed blueprint {} ({}x{}x{})", id, blueprint.getWidth(), blueprint.getHeight(), blueprint.getLength());
+        }
+        parsed.put(key, blueprint);
+        return blueprint;
+    }
+
+    private static Source loadConfigDirectory(Map<String, Blueprint> previous) {
+        Path directory = configDirectory();
+        if (!Files.isDirectory(directory)) {
+            return Source.EMPTY;
+        }
+
+        Map<ResourceLocation, Blueprint> loaded = new HashMap<>();
+        Map<String, Blueprint> parsed = new HashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> Files.isRegularFile(path) && isBlueprintFile(path.toString())).toList()) {
+                String fileName = file.getFileName().toString();
+                String path = stripExtension(fileName).toLowerCase(Locale.ROOT);
+                if (!ResourceLocation.isValidPath(path)) {
+                    LOGGER.warn("Ignoring blueprint {}: its name isn't a valid id", file);
+                    continue;
+                }
+                ResourceLocation id = ResourceLocation.fromNamespaceAndPath(Villages.MODID, path);
+                try {
+                    loaded.put(id, parse(id, fileName, Files.readAllBytes(file), previous, parsed));
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Failed to load blueprint {}", file, e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to list blueprints in {}", directory, e);
+        }
+        return new Source(Map.copyOf(loaded), parsed);
+    }
+
+    // Merges both sources into the snapshot lookups read. Called with the class lock held.
+    private static void publish() {
+        Map<ResourceLocation, Blueprint> merged = new HashMap<>(packs.blueprints());
+        merged.putAll(config.blueprints());
+        blueprints = Collections.unmodifiableMap(merged);
+        LOGGER.info("Loaded {} blueprints ({} from data packs, {} from {})", merged.size(), packs.blueprints().size(),
+            config.blueprints().size(), configDirectory());
+    }
+
+    // Parses without the class lock, so a reload applying on the server thread never waits for the disk
+    private static void reloadConfigDirectory() {
+        while (true) {
+            Map<String, Blueprint> previous;
+            int generation;
+            synchronized (BlueprintLibrary.class) {
+                previous = config.parsed();
+                generation = configGeneration;
+            }
+
+            Source loaded = loadConfigDirectory(previous);
+            synchronized (BlueprintLibrary.class) {
+                // A reload published while this was reading; read again so the newest files win
+                if (configGeneration == generation) {
+                    config = loaded;
+                    configGeneration++;
+                    publish();
+                    return;
+                }
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onAddReloadListeners(AddReloadListenerEvent event) {
+        event.addListener(new ReloadListener());
+    }
+
+    @SubscribeEvent
+    public static void onServerStarted(ServerStartedEvent event) {
+        if (!Config.watchBlueprintDirectory) {
+            return;
+        }
+        Path directory = configDirectory();
+        try {
+            Files.createDirectories(directory);
+            WatchService service = directory.getFileSystem().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+            watchService = service;
+
+            Thread watcher = new Thread(() -> watch(service), "Villages Blueprint Watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException e) {
+            LOGGER.error("Failed to watch {} for blueprint changes", directory, e);
+        }
+    }
+
+    private static void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                // Editors often write a file in several steps; wait for them to finish
+                WatchKey next = key;
+                while (next != null) {
+                    next.pollEvents();
+                    next.reset();
+                    next = service.poll(WATCH_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                reloadConfigDirectory();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // The server stopped
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        WatchService service = watchService;
+        watchService = null;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to stop watching blueprints", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.davisodom.villages;
+
+import net.minecraft.core.HolderGetter;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.util.datafix.DataFixTypes;
+import net.minecraft.util.datafix.DataFixers;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts blueprints to and from vanilla structure templates ({@code .nbt} files).
+ * <p>
+ * Templates can be saved and loaded with structure blocks, placed with {@code /place template}
+ * and cached by the server's {@code StructureTemplateManager}. Blueprints have no block
+ * entities or entities, so those are dropped on import and absent on export.
+ * <p>
+ * Positions a blueprint never set ({@link Blueprint#VOID}) are left out on export, as
+ * structure voids are, so placing the template keeps the terrain there. Positions a template
+ * leaves out import as {@link Blueprint#VOID} in turn.
+ */
+public final class BlueprintStructureFormat {
+    public static final String EXTENSION = ".nbt";
+
+    private BlueprintStructureFormat() {}
+
+    /**
+     * Builds the template tag for a blueprint, in the layout {@link StructureTemplate#save} writes.
+     * Unset positions are left out.
+     */
+    public static CompoundTag toTag(Blueprint blueprint) {
+        List<BlockState> palette = blueprint.getPalette();
+        Map<BlockState, Integer> paletteIds = new IdentityHashMap<>();
+        ListTag paletteTag = new ListTag();
+        for (BlockState state : palette) {
+            paletteIds.put(state, paletteIds.size());
+            paletteTag.add(NbtUtils.writeBlockState(state));
+        }
+
+        ListTag blocks = new ListTag();
+        blueprint.forEachBlock((x, y, z, state) -> {
+            if (state == Blueprint.VOID) {
+                return;
+            }
+            CompoundTag block = new CompoundTag();
+            block.put("pos", intList(x, y, z));
+            block.putInt("state", paletteIds.get(state));
+            blocks.add(block);
+        });
+
+        CompoundTag tag = new CompoundTag();
+        tag.put("size", intList(blueprint.getWidth(), blueprint.getHeight(), blueprint.getLength()));
+        tag.put("palette", paletteTag);
+        tag.put("blocks", blocks);
+        tag.put("entities", new ListTag());
+        return NbtUtils.addCurrentDataVersion(tag);
+    }
+
+    /**
+     * Reads a blueprint from a template tag, upgrading templates saved by older versions first.
+     *
+     * @param name   The name to give the blueprint, since templates don't carry one
+     * @param blocks The block registry to resolve palette entries against
+     * @throws IOException If the tag isn't a valid template
+     */
+    public static Blueprint fromTag(String name, CompoundTag tag, HolderGetter<Block> blocks) throws IOException {
+        int dataVersion = NbtUtils.getDataVersion(tag, 500);
+        tag = DataFixTypes.STRUCTURE.updateToCurrentVersion(DataFixers.getDataFixer(), tag, dataVersion);
+
+        ListTag size = tag.getList("size", Tag.TAG_INT);
+        if (size.size() != 3) {
+            throw new IOException("Structure template has no size");
+        }
+
+        // Templates with several palettes pick one at random when placed; the first is as good as any
+        ListTag paletteTag = tag.contains("palettes", Tag.TAG_LIST)
+            ? tag.getList("palettes", Tag.TAG_LIST).getList(0)
+            : tag.getList("palette", Tag.TAG_COMPOUND);
+        BlockState[] palette = new BlockState[paletteTag.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = NbtUtils.readBlockState(blocks, paletteTag.getCompound(i));
+        }
+
+        try {
+            Blueprint.Builder builder = new Blueprint.Builder(name, size.getInt(0), size.getInt(1), size.getInt(2));
+            for (Tag element : tag.getList("blocks", Tag.TAG_COMPOUND)) {
+                CompoundTag block = (CompoundTag) element;
+                ListTag pos = block.getList("pos", Tag.TAG_INT);
+                int state = block.getInt("state");
+                if (pos.size() != 3 || state < 0 || state >= palette.length) {
+                    throw new IOException("Invalid block in structure template: " + block);
+                }
+                builder.set(pos.getInt(0), pos.getInt(1), pos.getInt(2), palette[state]);
+            }
+            return builder.build();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid structure template: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Builds a template holding a blueprint, for placing it with {@link StructureTemplate#placeInWorld}.
+     */
+    public static StructureTemplate toTemplate(Blueprint blueprint, HolderGetter<Block> blocks) {
+        StructureTemplate template = new StructureTemplate();
+        template.load(blocks, toTag(blueprint));
+        return template;
+    }
+
+    /**
+     * Writes a blueprint as a gzipped template, like structure blocks save them.
+     */
+    public static void write(Blueprint blueprint, OutputStream stream) throws IOException {
+        NbtIo.writeCompressed(toTag(blueprint), stream);
+    }
+
+    /**
+     * Reads a blueprint from a gzipped template.
+     */
+    public static Blueprint read(String name, InputStream stream, HolderGetter<Block> blocks) throws IOException {
+        return fromTag(name, NbtIo.readCompressed(stream, NbtAccounter.unlimitedHeap()), blocks);
+    }
+
+    private static ListTag intList(int... values) {
+        ListTag list = new ListTag();
+        for (int value : values) {
+            list.add(IntTag.valueOf(value));
+        }
+        return list;
+    }
+}
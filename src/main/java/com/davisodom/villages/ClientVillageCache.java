@@ -0,0 +1,201 @@
+package com.davisodom.villages;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.tags.TagKey;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Villages the client has already received, per dimension and structure tag.
+ * <p>
+ * Alongside the villages themselves, the cache remembers which circles around past search
+ * origins are fully known. A search that falls entirely inside one of them is answered
+ * locally without a round trip, and a search that doesn't can exclude the known circle so
+ * the server only sends what's missing. The server pushes invalidations when it discovers
+ * a village the client may have been told wasn't there. Only touched on the client thread.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID, value = Dist.CLIENT)
+public class ClientVillageCache {
+    // Oldest coverage circles are forgotten first once this many are known
+    private static final int MAX_COVERAGE = 32;
+    // Allows for the player moving between sending a request and the server handling it
+    private static final int COVERAGE_MARGIN = 16;
+
+    private static final Map<CacheKey, KnownVillages> caches = new HashMap<>();
+
+    private record CacheKey(ResourceKey<Level> dimension, TagKey<Structure> tag) {}
+
+    /**
+     * A circle inside which every village is known.
+     */
+    public record Coverage(int x, int z, int radius) {
+        boolean contains(int px, int pz, long extent) {
+            long dx = px - x;
+            long dz = pz - z;
+            // The circle of the given extent around the point lies inside this one
+            return extent <= radius && dx * dx + dz * dz <= (radius - extent) * (radius - extent);
+        }
+    }
+
+    private static final class KnownVillages {
+        final Set<BlockPos> villages = new HashSet<>();
+        final Deque<Coverage> coverage = new ArrayDeque<>();
+    }
+
+    /**
+     * Answers a search from the cache if the area it needs is fully known.
+     *
+     * @return The nearest known villages, nearest first, or null if the server must be asked
+     */
+    @Nullable
+    public static List<BlockPos> lookup(ResourceKey<Level> dimension, TagKey<Structure> tag, BlockPos origin,
+                                        int radius, int limit) {
+        KnownVillages known = caches.get(new CacheKey(dimension, tag));
+        if (known == null) {
+            return null;
+        }
+
+        List<BlockPos> nearest = nearest(known, origin, radius, limit);
+        // Villages beyond the last result don't matter, so only that far needs to be known
+        long needed = nearest.size() < limit ? radius : (long) Math.ceil(horizontalDistance(origin, nearest.get(nearest.size() - 1)));
+        for (Coverage coverage : known.coverage) {
+            if (coverage.contains(origin.getX(), origin.getZ(), needed)) {
+                return nearest;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the known circle that best covers a search, for the server to exclude.
+     */
+    @Nullable
+    public static Coverage bestCoverage(ResourceKey<Level> dimension, TagKey<Structure> tag, BlockPos origin) {
+        KnownVillages known = caches.get(new CacheKey(dimension, tag));
+        if (known == null) {
+            return null;
+        }
+        Coverage best = null;
+        double bestReach = 0;
+        for (Coverage coverage : known.coverage) {
+            // How far the circle extends past the origin
+            double reach = coverage.radius() - Math.sqrt(distanceSq(origin, coverage.x(), coverage.z()));
+            if (reach > bestReach) {
+                best = coverage;
+                bestReach = reach;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the known villages inside a circle, nearest to the origin first.
+     */
+    public static List<BlockPos> knownWithin(ResourceKey<Level> dimension, TagKey<Structure> tag, BlockPos origin,
+                                             int radius, int limit, Coverage area) {
+        KnownVillages known = caches.get(new CacheKey(dimension, tag));
+        if (known == null) {
+            return new ArrayList<>();
+        }
+        List<BlockPos> nearest = nearest(known, origin, radius, limit);
+        nearest.removeIf(pos -> distanceSq(pos, area.x(), area.z()) > (long) area.radius() * area.radius());
+        return nearest;
+    }
+
+    public static void addVillages(ResourceKey<Level> dimension, TagKey<Structure> tag, List<BlockPos> villages) {
+        caches.computeIfAbsent(new CacheKey(dimension, tag), key -> new KnownVillages()).villages.addAll(villages);
+    }
+
+    /**
+     * Records that a completed search has told the client about every village it needs.
+     *
+     * @param radius The radius the server proved complete. A search that stopped early proves
+     *               less than it was asked for, so this is never simply the requested radius.
+     * @param limit  The result count the server actually used
+     */
+    public static void markCovered(ResourceKey<Level> dimension, TagKey<Structure> tag, BlockPos origin,
+                                   int radius, int limit) {
+        KnownVillages known = caches.computeIfAbsent(new CacheKey(dimension, tag), key -> new KnownVillages());
+        List<BlockPos> nearest = nearest(known, origin, radius, limit);
+        // With a full result list, only the area out to the last result is known to be complete
+        int covered = nearest.size() < limit ? radius : (int) horizontalDistance(origin, nearest.get(nearest.size() - 1));
+        covered -= COVERAGE_MARGIN;
+        if (covered <= 0) {
+            return;
+        }
+
+        known.coverage.addLast(new Coverage(origin.getX(), origin.getZ(), covered));
+        if (known.coverage.size() > MAX_COVERAGE) {
+            known.coverage.removeFirst();
+        }
+    }
+
+    /**
+     * Applies a server-pushed invalidation: structures were discovered, so any circle that
+     * claimed to know everything around one of them is no longer trusted. The client can't tell
+     * which tags the structures belong to, so circles of every tag in the dimension are dropped.
+     */
+    public static void invalidate(ResourceKey<Level> dimension, List<BlockPos> structures) {
+        caches.forEach((key, known) -> {
+            if (key.dimension().equals(dimension)) {
+                known.coverage.removeIf(coverage -> structures.stream()
+                    .anyMatch(structure -> coverage.contains(structure.getX(), structure.getZ(), 0)));
+            }
+        });
+    }
+
+    /**
+     * Forgets every known circle in a dimension, for when the server discovered too much to
+     * list. The villages themselves are kept; they are still there.
+     */
+    public static void invalidateAll(ResourceKey<Level> dimension) {
+        caches.forEach((key, known) -> {
+            if (key.dimension().equals(dimension)) {
+                known.coverage.clear();
+            }
+        });
+    }
+
+    private static List<BlockPos> nearest(KnownVillages known, BlockPos origin, int radius, int limit) {
+        long radiusSq = (long) radius * radius;
+        List<BlockPos> nearest = new ArrayList<>();
+        for (BlockPos village : known.villages) {
+            if (distanceSq(village, origin.getX(), origin.getZ()) <= radiusSq) {
+                nearest.add(village);
+            }
+        }
+        nearest.sort(Comparator.comparingLong(village -> distanceSq(village, origin.getX(), origin.getZ())));
+        return nearest.size() > limit ? new ArrayList<>(nearest.subList(0, limit)) : nearest;
+    }
+
+    private static long distanceSq(BlockPos pos, int x, int z) {
+        long dx = pos.getX() - x;
+        long dz = pos.getZ() - z;
+        return dx * dx + dz * dz;
+    }
+
+    private static double horizontalDistance(BlockPos a, BlockPos b) {
+        return Math.sqrt(distanceSq(a, b.getX(), b.getZ()));
+    }
+
+    @SubscribeEvent
+    public static void onLoggingOut(ClientPlayerNetworkEvent.LoggingOut event) {
+        caches.clear();
+    }
+}
@@ -0,0 +1,168 @@
+package com.davisodom.villages;
+
+import net.minecraft.ChatFormatting;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import com.davisodom.villages.util.DirectionHelper;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Client-side state of the player's current village search.
+ * <p>
+ * Results are streamed from the server in batches tagged with the request they belong to.
+ * Batches are merged into the current search, and batches for requests that have since been
+ * superseded are discarded. Every village received is also added to the
+ * {@link ClientVillageCache} and tracked by the {@link VillageHud}. Also holds the client
+ * half of the connection's structure type dictionary. Only touched on the client thread.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID, value = Dist.CLIENT)
+public class ClientVillageSearch {
+    private static int currentRequestId;
+    private static boolean finished = true;
+    // What the current search is for
+    private static ResourceKey<Level> dimension;
+    private static TagKey<Structure> tag;
+    private static BlockPos origin;
+    private static final Set<BlockPos> villages = new HashSet<>();
+    // Structure type names by dictionary id, for the current connection
+    private static final List<ResourceLocation> structureTypes = new ArrayList<>();
+
+    /**
+     * Starts a new search, superseding the previous one.
+     *
+     * @return The id to send with the request
+     */
+    public static int start(ResourceKey<Level> searchDimension, TagKey<Structure> searchTag, BlockPos searchOrigin) {
+        dimension = searchDimension;
+        tag = searchTag;
+        origin = searchOrigin;
+        currentRequestId++;
+        finished = false;
+        villages.clear();
+        VillageHud.clearTargets();
+        return currentRequestId;
+    }
+
+    /**
+     * Merges a batch of results into the current search.
+     *
+     * @param requestId The request the batch answers
+     * @param batch     Villages in the batch
+     * @return The villages not seen before in this search, or null if the batch is for a
+     *         superseded or already finished request and should be ignored
+     */
+    @Nullable
+    public static List<BlockPos> merge(int requestId, List<BlockPos> batch) {
+        if (requestId != currentRequestId || finished) {
+            return null;
+        }
+        ClientVillageCache.addVillages(dimension, tag, batch);
+        List<BlockPos> added = new ArrayList<>();
+        for (BlockPos village : batch) {
+            if (villages.add(village)) {
+                added.add(village);
+            }
+        }
+        if (!added.isEmpty()) {
+            VillageHud.setTargets(dimension, villages);
+        }
+        return added;
+    }
+
+    /**
+     * Marks the current search as finished once its final batch has been merged, and
+     * records the area it covered in the cache.
+     *
+     * @param radius The radius the server proved complete, or 0 if the search didn't run
+     * @param limit  The result count the server used
+     */
+    public static void finish(int requestId, int radius, int limit) {
+        if (requestId == currentRequestId && !finished) {
+            finished = true;
+            if (radius > 0) {
+                ClientVillageCache.markCovered(dimension, tag, origin, radius, limit);
+            }
+        }
+    }
+
+    /**
+     * Shows villages in chat, nearest first.
+     *
+     * @param header Whether to show the list header first
+     */
+    public static void showVillages(Player player, List<BlockPos> villagePositions, boolean header) {
+        if (header) {
+            player.displayClientMessage(
+                Component.literal("=== Nearby Villages ===").withStyle(ChatFormatting.GREEN), 
+                false
+            );
+        }
+
+        // Sort villages by distance, nearest first for faster reading
+        List<BlockPos> sortedVillages = new ArrayList<>(villagePositions);
+        sortedVillages.sort(Comparator.comparingDouble(village -> DirectionHelper.getDistanceSq(player, village)));
+
+        for (BlockPos pos : sortedVillages) {
+            player.displayClientMessage(
+                DirectionHelper.formatVillageInfo(player, pos),
+                false
+            );
+        }
+    }
+
+    public static void showNoVillages(Player player) {
+        player.displayClientMessage(
+            Component.literal("No villages found within search radius.").withStyle(ChatFormatting.GOLD),
+            false
+        );
+    }
+
+    /**
+     * Returns how many villages the current search has found so far.
+     */
+    public static int foundCount() {
+        return villages.size();
+    }
+
+    /**
+     * Appends names for newly assigned structure type ids, in id order.
+     */
+    public static void defineStructureTypes(List<ResourceLocation> names) {
+        structureTypes.addAll(names);
+    }
+
+    /**
+     * Resolves a structure type id sent by the server.
+     *
+     * @return The structure type, or null if the id is unknown
+     */
+    @Nullable
+    public static ResourceLocation structureType(int id) {
+        return id >= 0 && id < structureTypes.size() ? structureTypes.get(id) : null;
+    }
+
+    @SubscribeEvent
+    public static void onLoggingOut(ClientPlayerNetworkEvent.LoggingOut event) {
+        // Dictionaries are per connection, and searches don't carry over between servers
+        structureTypes.clear();
+        villages.clear();
+        VillageHud.clearTargets();
+        finished = true;
+    }
+}
@@ -1,7 +1,10 @@
 package com.davisodom.villages;
 
+import net.minecraft.core.registries.Registries;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
 import net.minecraft.world.item.Item;
+import net.minecraft.world.level.levelgen.structure.Structure;
 import net.minecraftforge.common.ForgeConfigSpec;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
@@ -21,6 +24,9 @@ public class Config {
     private static final Logger LOGGER = LoggerFactory.getLogger(Config.class);
     private static final ForgeConfigSpec.Builder BUILDER = new ForgeConfigSpec.Builder();
 
+    // The most results a single search can return, whatever the config says
+    public static final int SEARCH_RESULTS_CAP = 64;
+
     private static final ForgeConfigSpec.BooleanValue LOG_DIRT_BLOCK = BUILDER
             .comment("Whether to log the dirt block on common setup")
             .define("logDirtBlock", true);
@@ -33,6 +39,10 @@ public class Config {
             .comment("Whether to enable blueprint saving")
             .define("enableBlueprintSaving", true);
 
+    private static final ForgeConfigSpec.BooleanValue WATCH_BLUEPRINT_DIRECTORY = BUILDER
+            .comment("Whether to reload blueprints in config/villages/blueprints as soon as they change, instead of only on /reload")
+            .define("watchBlueprintDirectory", true);
+
     public static final ForgeConfigSpec.ConfigValue<String> MAGIC_NUMBER_INTRODUCTION = BUILDER
             .comment("What you want the introduction message to be for the magic number")
             .define("magicNumberIntroduction", "The magic number is... ");
@@ -50,6 +60,83 @@ public class Config {
             .comment("The radius (in blocks) to search for villages around the player")
             .defineInRange("villageSearchRadius", 1000, 100, 10000);
 
+    private static final ForgeConfigSpec.IntValue VILLAGE_SEARCH_RESULTS = BUILDER
+            .comment("How many of the nearest villages to ask the server for")
+            .defineInRange("villageSearchResults", 3, 1, SEARCH_RESULTS_CAP);
+
+    private static final ForgeConfigSpec.BooleanValue SHOW_VILLAGE_HUD = BUILDER
+            .comment("Whether to show the bearing and distance to located villages on the HUD")
+            .define("showVillageHud", false);
+
+    private static final ForgeConfigSpec.IntValue VILLAGE_HUD_ENTRIES = BUILDER
+            .comment("How many of the nearest located villages the HUD shows")
+            .defineInRange("villageHudEntries", 3, 1, 8);
+
+    private static final ForgeConfigSpec.IntValue MAX_SEARCH_RADIUS = BUILDER
+            .comment("The largest search radius (in blocks) the server allows; larger requests are clamped")
+            .defineInRange("maxSearchRadius", 2000, 100, 10000);
+
+    private static final ForgeConfigSpec.IntValue MAX_SEARCH_RESULTS = BUILDER
+            .comment("The most results the server returns for a single search; larger requests are clamped")
+            .defineInRange("maxSearchResults", 16, 1, SEARCH_RESULTS_CAP);
+
+    // a list of strings that are treated as resource locations for structure tags
+    private static final ForgeConfigSpec.ConfigValue<List<? extends String>> LOCATABLE_STRUCTURE_TAGS = BUILDER
+            .comment("Structure tags that players may search for. Tags whose structures are all in the villages:indexed",
+                    "structure tag are located from the shared placement grid index; others fall back to probing.")
+            .defineListAllowEmpty("locatableStructureTags", List.of("minecraft:village"), Config::validateResourceLocation);
+
+    private static final ForgeConfigSpec.BooleanValue ANALYTIC_VILLAGE_LOCATOR = BUILDER
+            .comment("Whether to locate villages from their structure placement grid instead of probing chunk by chunk.",
+                    "Probing is still used if a village structure has a placement that cannot be enumerated.")
+            .define("analyticVillageLocator", true);
+
+    private static final ForgeConfigSpec.IntValue MAX_PROBE_CHUNK_RADIUS = BUILDER
+            .comment("The largest radius (in chunks) searched by probing when a structure can't be located from its placement grid.",
+                    "Probing is expensive, so searches that fall back to it are clamped to this radius.")
+            .defineInRange("maxProbeChunkRadius", 8, 1, 64);
+
+    private static final ForgeConfigSpec.BooleanValue PASSIVE_VILLAGE_DISCOVERY = BUILDER
+            .comment("Whether to record villages found in chunks as they are generated or loaded")
+            .define("passiveVillageDiscovery", true);
+
+    private static final ForgeConfigSpec.IntValue LOCATOR_THREADS = BUILDER
+            .comment("The number of threads used to search for villages")
+            .defineInRange("locatorThreads", 2, 1, 16);
+
+    private static final ForgeConfigSpec.IntValue LOCATOR_QUEUE_SIZE = BUILDER
+            .comment("How many village searches may wait for a thread before players are told the server is busy")
+            .defineInRange("locatorQueueSize", 32, 1, 1024);
+
+    private static final ForgeConfigSpec.IntValue SEARCH_TICK_BUDGET_MICROS = BUILDER
+            .comment("How long (in microseconds) village searches may run on the server thread each tick")
+            .defineInRange("searchTickBudgetMicros", 2000, 100, 50000);
+
+    private static final ForgeConfigSpec.DoubleValue SEARCH_REQUESTS_PER_SECOND = BUILDER
+            .comment("How many searches per second each player may request on average")
+            .defineInRange("searchRequestsPerSecond", 2.0, 0.1, 100.0);
+
+    private static final ForgeConfigSpec.IntValue SEARCH_REQUEST_BURST = BUILDER
+            .comment("How many searches a player may request in a burst before being rate limited")
+            .defineInRange("searchRequestBurst", 5, 1, 100);
+
+    private static final ForgeConfigSpec.IntValue MAX_CONCURRENT_SEARCHES = BUILDER
+            .comment("How many distinct village searches may run at once across all players")
+            .defineInRange("maxConcurrentSearches", 16, 1, 256);
+
+    private static final ForgeConfigSpec.IntValue SURVEY_THREADS = BUILDER
+            .comment("The number of threads used by /villages survey, or 0 to use one per processor")
+            .defineInRange("surveyThreads", 0, 0, 64);
+
+    private static final ForgeConfigSpec.IntValue VILLAGE_INDEX_MAX_ENTRIES = BUILDER
+            .comment("The maximum number of empty search results kept per level before the least recently used are evicted.",
+                    "Villages that have been found are always kept.")
+            .defineInRange("villageIndexMaxEntries", 250000, 1000, 10000000);
+
+    private static final ForgeConfigSpec.IntValue VILLAGE_INDEX_ENTRY_TTL_MINUTES = BUILDER
+            .comment("How long (in minutes) an empty search result is trusted before the area is searched again, or 0 to keep it forever")
+            .defineInRange("villageIndexEntryTtlMinutes", 10080, 0, 525600);
+
     static final ForgeConfigSpec SPEC = BUILDER.build();
 
     public static boolean logDirtBlock;
@@ -58,12 +145,35 @@ public class Config {
     public static Set<Item> items;
     public static boolean logBlueprints;
     public static boolean enableBlueprintSaving;
+    public static boolean watchBlueprintDirectory;
     public static int villageSearchRadius;
+    public static int villageSearchResults;
+    public static boolean showVillageHud;
+    public static int villageHudEntries;
+    public static int maxSearchRadius;
+    public static int maxSearchResults;
+    public static Set<TagKey<Structure>> locatableStructureTags;
+    public static boolean analyticVillageLocator;
+    public static int maxProbeChunkRadius;
+    public static boolean passiveVillageDiscovery;
+    public static int locatorThreads;
+    public static int locatorQueueSize;
+    public static int searchTickBudgetMicros;
+    public static double searchRequestsPerSecond;
+    public static int searchRequestBurst;
+    public static int maxConcurrentSearches;
+    public static int surveyThreads;
+    public static int villageIndexMaxEntries;
+    public static int villageIndexEntryTtlMinutes;
 
     private static boolean validateItemName(final Object obj) {
         return obj instanceof final String itemName && ForgeRegistries.ITEMS.containsKey(ResourceLocation.tryParse(itemName));
     }
 
+    private static boolean validateResourceLocation(final Object obj) {
+        return obj instanceof final String location && ResourceLocation.tryParse(location) != null;
+    }
+
     @SubscribeEvent
     public static void onLoad(final ModConfigEvent.Loading configEvent) {
         updateConfigValues();
@@ -92,9 +202,69 @@ public class Config {
         enableBlueprintSaving = ENABLE_BLUEPRINT_SAVING.get();
         LOGGER.info("Blueprint saving enabled set to: {}", enableBlueprintSaving);
 
+        watchBlueprintDirectory = WATCH_BLUEPRINT_DIRECTORY.get();
+        LOGGER.info("Watch blueprint directory set to: {}", watchBlueprintDirectory);
+
         villageSearchRadius = VILLAGE_SEARCH_RADIUS.get();
         LOGGER.info("Village search radius set to: {}", villageSearchRadius);
 
+        villageSearchResults = VILLAGE_SEARCH_RESULTS.get();
+        LOGGER.info("Village search results set to: {}", villageSearchResults);
+
+        showVillageHud = SHOW_VILLAGE_HUD.get();
+        LOGGER.info("Show village HUD set to: {}", showVillageHud);
+
+        villageHudEntries = VILLAGE_HUD_ENTRIES.get();
+        LOGGER.info("Village HUD entries set to: {}", villageHudEntries);
+
+        maxSearchRadius = MAX_SEARCH_RADIUS.get();
+        LOGGER.info("Max search radius set to: {}", maxSearchRadius);
+
+        maxSearchResults = MAX_SEARCH_RESULTS.get();
+        LOGGER.info("Max search results set to: {}", maxSearchResults);
+
+        // convert the list of strings into a set of structure tags
+        locatableStructureTags = LOCATABLE_STRUCTURE_TAGS.get().stream()
+                .map(tagName -> TagKey.create(Registries.STRUCTURE, ResourceLocation.tryParse(tagName)))
+                .collect(Collectors.toSet());
+        LOGGER.info("Loaded {} locatable structure tags from config", locatableStructureTags.size());
+
+        analyticVillageLocator = ANALYTIC_VILLAGE_LOCATOR.get();
+        LOGGER.info("Analytic village locator set to: {}", analyticVillageLocator);
+
+        maxProbeChunkRadius = MAX_PROBE_CHUNK_RADIUS.get();
+        LOGGER.info("Max probe chunk radius set to: {}", maxProbeChunkRadius);
+
+        passiveVillageDiscovery = PASSIVE_VILLAGE_DISCOVERY.get();
+        LOGGER.info("Passive village discovery set to: {}", passiveVillageDiscovery);
+
+        locatorThreads = LOCATOR_THREADS.get();
+        LOGGER.info("Locator threads set to: {}", locatorThreads);
+
+        locatorQueueSize = LOCATOR_QUEUE_SIZE.get();
+        LOGGER.info("Locator queue size set to: {}", locatorQueueSize);
+
+        searchTickBudgetMicros = SEARCH_TICK_BUDGET_MICROS.get();
+        LOGGER.info("Search tick budget set to: {} microseconds", searchTickBudgetMicros);
+
+        searchRequestsPerSecond = SEARCH_REQUESTS_PER_SECOND.get();
+        LOGGER.info("Search requests per second set to: {}", searchRequestsPerSecond);
+
+        searchRequestBurst = SEARCH_REQUEST_BURST.get();
+        LOGGER.info("Search request burst set to: {}", searchRequestBurst);
+
+        maxConcurrentSearches = MAX_CONCURRENT_SEARCHES.get();
+        LOGGER.info("Max concurrent searches set to: {}", maxConcurrentSearches);
+
+        surveyThreads = SURVEY_THREADS.get();
+        LOGGER.info("Survey threads set to: {}", surveyThreads);
+
+        villageIndexMaxEntries = VILLAGE_INDEX_MAX_ENTRIES.get();
+        LOGGER.info("Village index max entries set to: {}", villageIndexMaxEntries);
+
+        villageIndexEntryTtlMinutes = VILLAGE_INDEX_ENTRY_TTL_MINUTES.get();
+        LOGGER.info("Village index entry TTL set to: {} minutes", villageIndexEntryTtlMinutes);
+
         // convert the list of strings into a set of items
         items = ITEM_STRINGS.get().stream()
                 .map(itemName -> ForgeRegistries.ITEMS.getValue(ResourceLocation.tryParse(itemName)))
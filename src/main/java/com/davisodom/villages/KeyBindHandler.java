@@ -6,6 +6,7 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
 import net.minecraft.core.BlockPos;
+import net.minecraft.tags.StructureTags;
 import net.minecraft.network.chat.Component;
 import net.minecraft.ChatFormatting;
 import net.minecraftforge.api.distmarker.Dist;
@@ -13,16 +14,14 @@ import net.minecraftforge.client.event.InputEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 
+import java.util.List;
+
 @Mod.EventBusSubscriber(modid = Villages.MODID, value = Dist.CLIENT)
 public class KeyBindHandler {
     // Add cooldown mechanism (300ms default, reduced from 500ms)
     private static long lastRequestTime = 0;
     private static final long REQUEST_COOLDOWN = 300; // milliseconds
     
-    // Add position caching to avoid redundant requests
-    private static BlockPos lastRequestPosition = null;
-    private static final int POSITION_THRESHOLD = 16; // Only request if player moved this many blocks
-    
     // Track when we'll be able to make the next request
     private static long nextAvailableRequestTime = 0;
 
@@ -36,22 +35,46 @@ public class KeyBindHandler {
             if (player != null && level != null) {
                 long currentTime = System.currentTimeMillis();
                 BlockPos currentPos = player.blockPosition();
+                int radius = Config.villageSearchRadius;
+                int limit = Config.villageSearchResults;
+                
+                // Answer locally when the villages already received cover the search
+                List<BlockPos> cached = ClientVillageCache.lookup(level.dimension(), StructureTags.VILLAGE, currentPos, radius, limit);
+                if (cached != null) {
+                    VillageHud.setTargets(level.dimension(), cached);
+                    if (cached.isEmpty()) {
+                        ClientVillageSearch.showNoVillages(player);
+                    } else {
+                        ClientVillageSearch.showVillages(player, cached, true);
+                    }
+                    return;
+                }
                 
                 // Check if enough time has passed since last request
                 boolean timeElapsed = (currentTime - lastRequestTime) > REQUEST_COOLDOWN;
                 
-                // Check if player has moved significantly
-                boolean hasMoved = lastRequestPosition == null || 
-                                   lastRequestPosition.distSqr(currentPos) > (POSITION_THRESHOLD * POSITION_THRESHOLD);
-                
-                // Only send request if cooldown passed and player moved enough
-                if (timeElapsed && hasMoved) {
+                // Only send request if cooldown passed
+                if (timeElapsed) {
+                    int requestId = ClientVillageSearch.start(level.dimension(), StructureTags.VILLAGE, currentPos);
+                    
+                    // Only ask the server for villages outside the area already known
+                    ClientVillageCache.Coverage known = ClientVillageCache.bestCoverage(level.dimension(), StructureTags.VILLAGE, currentPos);
+                    FindVillagesRequestPacket.Exclusion exclude = null;
+                    if (known != null) {
+                        exclude = new FindVillagesRequestPacket.Exclusion(known.x(), known.z(), known.radius());
+                        List<BlockPos> knownVillages = ClientVillageCache.knownWithin(level.dimension(), StructureTags.VILLAGE,
+                            currentPos, radius, limit, known);
+                        List<BlockPos> shown = ClientVillageSearch.merge(requestId, knownVillages);
+                        if (shown != null && !shown.isEmpty()) {
+                            ClientVillageSearch.showVillages(player, shown, true);
+                        }
+                    }
+                    
                     // Send request to server to find villages
-                    NetworkHandler.sendToServer(new FindVillagesRequestPacket());
+                    NetworkHandler.sendToServer(new FindVillagesRequestPacket(requestId, radius, limit, StructureTags.VILLAGE, exclude));
                     
                     // Update state
                     lastRequestTime = currentTime;
-                    lastRequestPosition = currentPos;
                     nextAvailableRequestTime = currentTime + REQUEST_COOLDOWN;
                     
                     // Show searching message for immediate feedback
@@ -62,14 +85,7 @@ public class KeyBindHandler {
                 } else {
                     // Calculate remaining time
                     double remainingTime = Math.max(0, (nextAvailableRequestTime - currentTime) / 1000.0);
-                    if (!hasMoved) {
-                        // Player hasn't moved enough
-                        player.displayClientMessage(
-                            Component.literal("Move at least " + POSITION_THRESHOLD + " blocks to search again.")
-                                .withStyle(ChatFormatting.GRAY),
-                            false
-                        );
-                    } else if (remainingTime > 0) {
+                    if (remainingTime > 0) {
                         // Still on cooldown
                         player.displayClientMessage(
                             Component.literal("Please wait before searching again.")
@@ -88,4 +104,4 @@ public class KeyBindHandler {
             }
         }
     }
-}
\ No newline at end of file
+}
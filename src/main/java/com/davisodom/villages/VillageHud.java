@@ -0,0 +1,194 @@
+package com.davisodom.villages;
+
+import com.davisodom.villages.util.DirectionHelper;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.Font;
+import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.util.FormattedCharSequence;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.client.event.RenderGuiEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.Collection;
+
+/**
+ * HUD overlay showing an arrow, distance and direction to the nearest located villages.
+ * <p>
+ * The overlay draws every frame, so the frame path allocates nothing. Targets are copied into
+ * flat arrays when they change, and are only re-sorted by squared distance when the player
+ * moves to another block. Arrows come from a fixed table, and each line's text is laid out
+ * once and reused until its distance or direction changes. Only touched on the client thread.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID, value = Dist.CLIENT)
+public class VillageHud {
+    private static final int MARGIN = 4;
+    private static final int LINE_HEIGHT = 10;
+    private static final int NEAREST_COLOR = 0xFF55FF55;
+    private static final int COLOR = 0xFFFFFFFF;
+    private static final int MAX_LINES = 8;
+
+    // Arrows by bearing relative to where the player is facing, in 45 degree steps clockwise from ahead
+    private static final FormattedCharSequence[] ARROWS = {
+        arrow("↑"), arrow("↗"), arrow("→"), arrow("↘"),
+        arrow("↓"), arrow("↙"), arrow("←"), arrow("↖")
+    };
+
+    // Tracked villages; only replaced when the search results change
+    private static ResourceKey<Level> dimension;
+    private static int[] targetX = new int[0];
+    private static int[] targetZ = new int[0];
+    private static int targetCount;
+
+    // Nearest-first order of the targets, valid for the player block it was sorted at
+    private static long[] distanceSq = new long[0];
+    private static int[] order = new int[0];
+    private static boolean sorted;
+    private static int sortedX;
+    private static int sortedZ;
+
+    // Laid out text of each line, with what it was built for
+    private static final FormattedCharSequence[] lineText = new FormattedCharSequence[MAX_LINES];
+    private static final int[] lineWidth = new int[MAX_LINES];
+    private static final int[] lineTarget = new int[MAX_LINES];
+    private static final int[] lineDistance = new int[MAX_LINES];
+    private static final String[] lineDirection = new String[MAX_LINES];
+    private static int arrowWidth = -1;
+
+    private static FormattedCharSequence arrow(String glyph) {
+        return Component.literal(glyph).getVisualOrderText();
+    }
+
+    /**
+     * Replaces the tracked villages.
+     */
+    public static void setTargets(ResourceKey<Level> targetDimension, Collection<BlockPos> villages) {
+        dimension = targetDimension;
+        targetCount = villages.size();
+        if (targetX.length < targetCount) {
+            targetX = new int[targetCount];
+            targetZ = new int[targetCount];
+            distanceSq = new long[targetCount];
+            order = new int[targetCount];
+        }
+        int i = 0;
+        for (BlockPos village : villages) {
+            targetX[i] = village.getX();
+            targetZ[i] = village.getZ();
+            i++;
+        }
+        sorted = false;
+        invalidateLines();
+    }
+
+    public static void clearTargets() {
+        targetCount = 0;
+        invalidateLines();
+    }
+
+    private static void invalidateLines() {
+        for (int line = 0; line < MAX_LINES; line++) {
+            lineText[line] = null;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onRenderGui(RenderGuiEvent.Post event) {
+        if (!Config.showVillageHud || targetCount == 0) {
+            return;
+        }
+        Minecraft minecraft = Minecraft.getInstance();
+        Player player = minecraft.player;
+        if (player == null || minecraft.options.hideGui || player.level().dimension() != dimension) {
+            return;
+        }
+
+        int playerX = player.getBlockX();
+        int playerZ = player.getBlockZ();
+        if (!sorted || playerX != sortedX || playerZ != sortedZ) {
+            sortTargets(playerX, playerZ);
+        }
+
+        Font font = minecraft.font;
+        if (arrowWidth < 0) {
+            for (FormattedCharSequence arrow : ARROWS) {
+                arrowWidth = Math.max(arrowWidth, font.width(arrow));
+            }
+        }
+
+        GuiGraphics graphics = event.getGuiGraphics();
+        int lines = Math.min(Math.min(targetCount, Config.villageHudEntries), MAX_LINES);
+        float yaw = player.getYRot();
+        for (int line = 0; line < lines; line++) {
+            int target = order[line];
+            double dx = targetX[target] + 0.5 - player.getX();
+            double dz = targetZ[target] + 0.5 - player.getZ();
+            // Same angle convention as the player's yaw, so their difference is the bearing from ahead
+            double bearing = Math.toDegrees(Math.atan2(-dx, dz)) - yaw;
+            int arrow = Math.floorMod((int) Math.round(bearing / 45.0), 8);
+
+            int distance = (int) Math.sqrt(distanceSq[target]);
+            String direction = DirectionHelper.getDirectionTowards(dx, dz);
+            if (lineText[line] == null || lineTarget[line] != target || lineDistance[line] != distance
+                || lineDirection[line] != direction) {
+                layoutLine(font, line, target, distance, direction);
+            }
+
+            int color = line == 0 ? NEAREST_COLOR : COLOR;
+            int y = MARGIN + line * LINE_HEIGHT;
+            int x = graphics.guiWidth() - MARGIN - lineWidth[line];
+            graphics.drawString(font, ARROWS[arrow], x - arrowWidth - 2, y, color);
+            graphics.drawString(font, lineText[line], x, y, color);
+        }
+    }
+
+    // Only runs when the player changes block, or the targets change
+    private static void sortTargets(int playerX, int playerZ) {
+        for (int i = 0; i < targetCount; i++) {
+            long dx = targetX[i] - playerX;
+            long dz = targetZ[i] - playerZ;
+            distanceSq[i] = dx * dx + dz * dz;
+        }
+        // Insertion sort from the previous order; it is almost sorted after a one block move
+        if (!sorted) {
+            for (int i = 0; i < targetCount; i++) {
+                order[i] = i;
+            }
+        }
+        for (int i = 1; i < targetCount; i++) {
+            int target = order[i];
+            int j = i - 1;
+            while (j >= 0 && distanceSq[order[j]] > distanceSq[target]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = target;
+        }
+        sorted = true;
+        sortedX = playerX;
+        sortedZ = playerZ;
+    }
+
+    // Only runs when a line's text changes
+    private static void layoutLine(Font font, int line, int target, int distance, String direction) {
+        FormattedCharSequence text = Component.literal(distance + "m " + direction
+            + " (" + targetX[target] + ", " + targetZ[target] + ")").getVisualOrderText();
+        lineText[line] = text;
+        lineWidth[line] = font.width(text);
+        lineTarget[line] = target;
+        lineDistance[line] = distance;
+        lineDirection[line] = direction;
+    }
+
+    @SubscribeEvent
+    public static void onLoggingOut(ClientPlayerNetworkEvent.LoggingOut event) {
+        clearTargets();
+        dimension = null;
+    }
+}
@@ -1,16 +1,20 @@
 package com.davisodom.villages;
 
 import com.davisodom.villages.command.BlueprintSaveCommand;
+import com.davisodom.villages.command.VillagesCommand;
 import com.davisodom.villages.network.NetworkHandler;
 import com.mojang.logging.LogUtils;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.food.FoodProperties;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructurePlaceSettings;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.BuildCreativeModeTabContentsEvent;
@@ -30,11 +34,7 @@ import net.minecraft.world.item.CreativeModeTab;
 import net.minecraft.core.registries.Registries;
 
 import java.util.HashSet;
-import java.util.List;
-import java.util.ArrayList;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.Optional;
 
 import org.slf4j.Logger;
 
@@ -45,6 +45,8 @@ public class Villages {
     public static final String MODID = "villages";
     // Directly reference a slf4j logger
     private static final Logger LOGGER = LogUtils.getLogger();
+    // The blueprint built at spawn when the server starts
+    private static final ResourceLocation VILLAGE_BLUEPRINT = ResourceLocation.fromNamespaceAndPath(MODID, "example_blueprint");
     // Create a Deferred Register to hold Blocks which will all be registered under the "villages" namespace
     public static final DeferredRegister<Block> BLOCKS = DeferredRegister.create(ForgeRegistries.BLOCKS, MODID);
     // Create a Deferred Register to hold Items which will all be registered under the "villages" namespace
@@ -89,6 +91,7 @@ public class Villages {
     @SubscribeEvent
     public void registerCommands(RegisterCommandsEvent event) {
         BlueprintSaveCommand.register(event.getDispatcher());
+        VillagesCommand.register(event.getDispatcher());
     }
 
     private void commonSetup(final FMLCommonSetupEvent event) {
@@ -108,36 +111,6 @@ public class Villages {
 
         Config.items = new HashSet<>(); // Ensure this is not null
         Config.items.forEach((item) -> LOGGER.info("ITEM >> {}", item.toString()));
-
-        // Load blueprints and generate villages
-        List<Blueprint> blueprints = loadBlueprints();
-        generateVillage(blueprints);
-    }
-
-    private List<Blueprint> loadBlueprints() {
-        List<Blueprint> blueprints = new ArrayList<>();
-        // List of blueprint filenames (could be extended to a config-driven list)
-        String[] blueprintFiles = { "example_blueprint.json" };
-        for (String blueprintFile : blueprintFiles) {
-            try (InputStream is = getClass().getClassLoader().getResourceAsStream("blueprints/" + blueprintFile)) {
-                if (is != null) {
-                    blueprints.add(Blueprint.loadFromJson(new InputStreamReader(is)));
-                } else {
-                    LOGGER.error("Blueprint resource not found: " + blueprintFile);
-                }
-            } catch (IOException e) {
-                LOGGER.error("Failed to load blueprint from resource: " + blueprintFile, e);
-            }
-        }
-        return blueprints;
-    }
-
-    private void generateVillage(List<Blueprint> blueprints) {
-        // Placeholder for village generation logic using blueprints
-        blueprints.forEach(blueprint -> {
-            LOGGER.info("Generating village using blueprint: " + blueprint.getName());
-            // Add village generation logic here
-        });
     }
 
     // Add the example block item to the building blocks tab
@@ -154,20 +127,17 @@ public class Villages {
         // Get the overworld (assumes Level.OVERWORLD is used)
         ServerLevel world = event.getServer().getLevel(Level.OVERWORLD);
         if (world != null) {
-            // Load the blueprints (example_blueprint.json)
-            List<Blueprint> blueprints = loadBlueprints();
-            if (!blueprints.isEmpty()) {
-                // Use the first blueprint as the village blueprint
-                Blueprint blueprint = blueprints.get(0);
+            // Data pack blueprints are loaded before the server starts
+            Optional<Blueprint> villageBlueprint = BlueprintLibrary.get(VILLAGE_BLUEPRINT);
+            if (villageBlueprint.isPresent()) {
+                Blueprint blueprint = villageBlueprint.get();
                 BlockPos spawn = world.getSharedSpawnPos();
                 LOGGER.info("Generating village using blueprint: " + blueprint.getName() + " at spawn " + spawn);
-                // Place each block from the blueprint relative to spawn
-                blueprint.getBlockData().forEach(info -> {
-                    BlockPos target = spawn.offset(info.pos());
-                    world.setBlock(target, info.state(), 3);
-                });
+                // Place the blueprint relative to spawn as a structure template, which sets blocks in bulk
+                StructureTemplate template = blueprint.toStructureTemplate(world.holderLookup(Registries.BLOCK));
+                template.placeInWorld(world, spawn, spawn, new StructurePlaceSettings(), world.getRandom(), Block.UPDATE_ALL);
             } else {
-                LOGGER.error("No blueprints loaded, village generation aborted.");
+                LOGGER.error("Blueprint " + VILLAGE_BLUEPRINT + " not loaded, village generation aborted.");
             }
         } else {
             LOGGER.error("Overworld not found, village generation aborted.");
@@ -1,242 +1,281 @@
 package com.davisodom.villages.command;
 
 import com.davisodom.villages.Blueprint;
+import com.davisodom.villages.BlueprintBinaryFormat;
+import com.davisodom.villages.BlueprintLibrary;
 import com.davisodom.villages.BlueprintSelection;
 import com.davisodom.villages.BlueprintSelectionHandler;
 import com.davisodom.villages.BlueprintSelectionStorage;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.TypeAdapter;
-import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonWriter;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.TypeAdapterFactory;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
+import com.davisodom.villages.BlueprintStructureFormat;
+import com.davisodom.villages.Villages;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
 import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
+import net.minecraft.commands.arguments.ResourceLocationArgument;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.network.chat.Component;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
-import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate.StructureBlockInfo;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.UUID;
 import java.util.Optional;
+import java.util.UUID;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplateManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import net.minecraftforge.registries.ForgeRegistries;
 
 public class BlueprintSaveCommand {
     private static final Logger LOGGER = LoggerFactory.getLogger(BlueprintSaveCommand.class);
 
-    private static class BlockStateAdapter extends TypeAdapter<BlockState> {
-        @Override
-        public void write(JsonWriter out, BlockState value) throws IOException {
-            if (value == null) {
-                out.nullValue();
-                return;
-            }
-            try {
-                // Write just the registry name
-                String registryName = ForgeRegistries.BLOCKS.getKey(value.getBlock()).toString();
-                out.value(registryName);
-            } catch (Exception e) {
-                LOGGER.error("Failed to serialize BlockState: {}", value.getBlock(), e);
-                throw e;
-            }
-        }
+    // The file formats a blueprint can be saved in
+    private enum Format {
+        JSON(".json"),
+        BINARY(BlueprintBinaryFormat.EXTENSION),
+        STRUCTURE(BlueprintStructureFormat.EXTENSION);
+
+        private final String extension;
 
-        @Override
-        public BlockState read(JsonReader in) throws IOException {
-            return null;
+        Format(String extension) {
+            this.extension = extension;
         }
     }
 
-    private static class StructureBlockInfoAdapter extends TypeAdapter<StructureBlockInfo> {
-        private final TypeAdapter<BlockState> blockStateAdapter;
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(
+            Commands.literal("saveblueprint")
+                .executes(context -> saveBlueprint(context.getSource(), Format.JSON))
+                .then(Commands.literal("json")
+                    .executes(context -> saveBlueprint(context.getSource(), Format.JSON)))
+                .then(Commands.literal("binary")
+                    .executes(context -> saveBlueprint(context.getSource(), Format.BINARY)))
+                .then(Commands.literal("structure")
+                    .executes(context -> saveBlueprint(context.getSource(), Format.STRUCTURE)))
+        );
+        dispatcher.register(
+            Commands.literal("convertblueprint")
+                .requires(source -> source.hasPermission(2))
+                .then(Commands.argument("file", StringArgumentType.string())
+                    .executes(context -> convertBlueprint(context.getSource(),
+                        StringArgumentType.getString(context, "file"))))
+        );
+        dispatcher.register(
+            Commands.literal("blueprintstructure")
+                .requires(source -> source.hasPermission(2))
+                .then(Commands.literal("export")
+                    .then(Commands.argument("file", StringArgumentType.string())
+                        .then(Commands.argument("name", StringArgumentType.string())
+                            .executes(context -> exportStructure(context.getSource(),
+                                StringArgumentType.getString(context, "file"),
+                                StringArgumentType.getString(context, "name"))))))
+                .then(Commands.literal("import")
+                    .then(Commands.argument("template", ResourceLocationArgument.id())
+                        .suggests((context, builder) -> SharedSuggestionProvider.suggestResource(
+                            context.getSource().getServer().getStructureManager().listTemplates(), builder))
+                        .executes(context -> importStructure(context.getSource(),
+                            ResourceLocationArgument.getId(context, "template")))))
+        );
+    }
 
-        StructureBlockInfoAdapter(Gson gson) {
-            this.blockStateAdapter = new BlockStateAdapter();
-        }
+    private static int saveBlueprint(CommandSourceStack source, Format format) {
+        try {
+            LOGGER.info("Starting blueprint save command execution");
+            UUID playerId = source.getPlayerOrException().getUUID();
+            LOGGER.debug("Processing blueprint save for player: {}", playerId);
 
-        @Override
-        public void write(JsonWriter out, StructureBlockInfo value) throws IOException {
-            if (value == null) {
-                out.nullValue();
-                return;
+            BlueprintSelection selection = BlueprintSelectionStorage.getSelection(playerId);
+            if (selection == null) {
+                LOGGER.warn("No blueprint selection found for player: {}", playerId);
+                source.sendFailure(Component.literal(ChatFormatting.RED + "No blueprint selection found. " +
+                    "Use the wooden axe to select two corners first."));
+                return 0;
             }
-            try {
-                out.beginObject();
-                // Write coordinates as separate x, y, z fields
-                out.name("x").value(value.pos().getX());
-                out.name("y").value(value.pos().getY());
-                out.name("z").value(value.pos().getZ());
-                
-                out.name("block");
-                blockStateAdapter.write(out, value.state());
-                
-                out.endObject();
-            } catch (Exception e) {
-                LOGGER.error("Failed to serialize StructureBlockInfo at {}: {}", value.pos(), e.getMessage());
-                throw e;
+
+            LOGGER.debug("Selection found - Corner1: {}, Corner2: {}",
+                selection.getCorner1(), selection.getCorner2());
+
+            // Create a blueprint object based on the selection
+            int width = Math.abs(selection.getCorner2().getX() - selection.getCorner1().getX()) + 1;
+            int height = Math.abs(selection.getCorner2().getY() - selection.getCorner1().getY()) + 1;
+            int length = Math.abs(selection.getCorner2().getZ() - selection.getCorner1().getZ()) + 1;
+
+            LOGGER.debug("Blueprint dimensions - Width: {}, Height: {}, Length: {}", width, height, length);
+
+            // Check before reading any blocks, so a huge selection fails fast instead of after the scan
+            if ((long) width * height * length > Blueprint.MAX_VOLUME) {
+                source.sendFailure(Component.literal(ChatFormatting.RED + String.format(
+                    "The selection is %dx%dx%d, which is %d blocks. Blueprints can hold at most %d blocks.",
+                    width, height, length, (long) width * height * length, Blueprint.MAX_VOLUME)));
+                return 0;
             }
-        }
 
-        @Override
-        public StructureBlockInfo read(JsonReader in) throws IOException {
-            return null;
-        }
-    }
+            try {
+                Blueprint blueprint = extractBlueprint(selection, source, width, height, length);
+                LOGGER.debug("Extracted {} blocks for blueprint", width * height * length);
 
-    private static class OptionalTypeAdapter<T> extends TypeAdapter<Optional<T>> {
-        private final TypeAdapter<T> adapter;
+                Path blueprintDir = getBlueprintDirectory();
+                String timestamp = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss").format(LocalDateTime.now());
+                File outputFile = blueprintDir.resolve("blueprint_" + timestamp + format.extension).toFile();
+                LOGGER.debug("Saving blueprint to: {}", outputFile.getAbsolutePath());
 
-        OptionalTypeAdapter(TypeAdapter<T> adapter) {
-            this.adapter = adapter;
-        }
+                switch (format) {
+                    case JSON -> blueprint.saveToJson(outputFile.getPath());
+                    case BINARY -> blueprint.saveToBinary(outputFile.getPath(), true);
+                    case STRUCTURE -> blueprint.saveToStructure(outputFile.getPath());
+                }
 
-        @Override
-        public void write(JsonWriter out, Optional<T> value) throws IOException {
-            if (value.isPresent()) {
-                adapter.write(out, value.get());
-            } else {
-                out.nullValue();
+                LOGGER.info("Successfully saved blueprint to: {}", outputFile.getAbsolutePath());
+                source.sendSuccess(() -> Component.literal(ChatFormatting.GREEN + "Blueprint saved to: " +
+                    outputFile.getAbsolutePath()), false);
+                BlueprintSelectionHandler.clearPlayerSelections(playerId);
+            } catch (IOException e) {
+                LOGGER.error("Failed to save blueprint", e);
+                source.sendFailure(Component.literal(ChatFormatting.RED + "Failed to save blueprint: " + e.getMessage()));
+                return 0;
             }
+            return 1;
+        } catch (Exception e) {
+            LOGGER.error("Unexpected error during blueprint save", e);
+            source.sendFailure(Component.literal(ChatFormatting.RED + "An unexpected error occurred: " + e.getMessage()));
+            return 0;
         }
+    }
+
+    // Converts a saved JSON blueprint to the binary format, writing it beside the original
+    private static int convertBlueprint(CommandSourceStack source, String fileName) {
+        try {
+            Path blueprintDir = getBlueprintDirectory();
+            Path input = blueprintDir.resolve(fileName).normalize();
+            if (!input.startsWith(blueprintDir) || !fileName.endsWith(".json") || !Files.isRegularFile(input)) {
+                source.sendFailure(Component.literal(ChatFormatting.RED + "No JSON blueprint named " + fileName
+                    + " in " + blueprintDir));
+                return 0;
+            }
+
+            String inputName = input.getFileName().toString();
+            Path output = input.resolveSibling(inputName.substring(0, inputName.length() - ".json".length())
+                + BlueprintBinaryFormat.EXTENSION);
+            Blueprint.loadFromJson(input.toString()).saveToBinary(output.toString(), true);
 
-        @Override
-        public Optional<T> read(JsonReader in) throws IOException {
-            return Optional.ofNullable(adapter.read(in));
+            long jsonSize = Files.size(input);
+            long binarySize = Files.size(output);
+            LOGGER.info("Converted blueprint {} to {} ({} -> {} bytes)", input, output, jsonSize, binarySize);
+            source.sendSuccess(() -> Component.literal(ChatFormatting.GREEN + "Blueprint converted to: " + output
+                + " (" + jsonSize + " -> " + binarySize + " bytes)"), false);
+            return 1;
+        } catch (Exception e) {
+            LOGGER.error("Failed to convert blueprint {}", fileName, e);
+            source.sendFailure(Component.literal(ChatFormatting.RED + "Failed to convert blueprint: " + e.getMessage()));
+            return 0;
         }
     }
 
-    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
-        dispatcher.register(
-            Commands.literal("saveblueprint")
-                .executes(context -> {
-                    CommandSourceStack source = context.getSource();
-                    try {
-                        LOGGER.info("Starting blueprint save command execution");
-                        UUID playerId = source.getPlayerOrException().getUUID();
-                        LOGGER.debug("Processing blueprint save for player: {}", playerId);
-                        
-                        BlueprintSelection selection = BlueprintSelectionStorage.getSelection(playerId);
-                        if (selection == null) {
-                            LOGGER.warn("No blueprint selection found for player: {}", playerId);
-                            source.sendFailure(Component.literal(ChatFormatting.RED + "No blueprint selection found. " +
-                                "Use the wooden axe to select two corners first."));
-                            return 0;
-                        }
-
-                        LOGGER.debug("Selection found - Corner1: {}, Corner2: {}", 
-                            selection.getCorner1(), selection.getCorner2());
+    // Registers a saved blueprint with the server's structure templates as villages:<name> and saves it
+    // under the world's generated structures, so structure blocks and /place template can use it
+    private static int exportStructure(CommandSourceStack source, String fileName, String templateName) {
+        try {
+            Path blueprintDir = getBlueprintDirectory();
+            Path input = blueprintDir.resolve(fileName).normalize();
+            if (!input.startsWith(blueprintDir) || !Files.isRegularFile(input)) {
+                source.sendFailure(Component.literal(ChatFormatting.RED + "No blueprint named " + fileName
+                    + " in " + blueprintDir));
+                return 0;
+            }
+            if (!ResourceLocation.isValidPath(templateName)) {
+                source.sendFailure(Component.literal(ChatFormatting.RED + "Invalid structure template name: " + templateName));
+                return 0;
+            }
 
-                        // Create a blueprint object based on the selection
-                        int width = Math.abs(selection.getCorner2().getX() - selection.getCorner1().getX()) + 1;
-                        int height = Math.abs(selection.getCorner2().getY() - selection.getCorner1().getY()) + 1;
-                        int length = Math.abs(selection.getCorner2().getZ() - selection.getCorner1().getZ()) + 1;
-                        
-                        LOGGER.debug("Blueprint dimensions - Width: {}, Height: {}, Length: {}", width, height, length);
+            ResourceLocation id = ResourceLocation.fromNamespaceAndPath(Villages.MODID, templateName);
+            Blueprint blueprint = Blueprint.load(input.toString());
+            StructureTemplateManager manager = source.getServer().getStructureManager();
+            // Loading into the cached template means anything already using it sees the new blocks at once
+            StructureTemplate template = manager.getOrCreate(id);
+            template.load(source.getLevel().holderLookup(Registries.BLOCK), BlueprintStructureFormat.toTag(blueprint));
+            if (!manager.save(id)) {
+                throw new IOException("Structure template " + id + " could not be saved");
+            }
 
-                        try {
-                            List<StructureBlockInfo> blockData = extractBlockData(selection, source);
-                            LOGGER.debug("Extracted {} blocks for blueprint", blockData.size());
-                            
-                            Blueprint blueprint = new Blueprint("player_blueprint", width, height, length, blockData);
-                            
-                            GsonBuilder gsonBuilder = new GsonBuilder()
-                                .setPrettyPrinting()
-                                .registerTypeAdapter(BlockState.class, new BlockStateAdapter())
-                                .registerTypeAdapter(StructureBlockInfo.class, new StructureBlockInfoAdapter(new Gson()));
+            LOGGER.info("Exported blueprint {} as structure template {}", input, id);
+            source.sendSuccess(() -> Component.literal(ChatFormatting.GREEN + "Blueprint exported as structure template "
+                + id), false);
+            return 1;
+        } catch (Exception e) {
+            LOGGER.error("Failed to export blueprint {}", fileName, e);
+            source.sendFailure(Component.literal(ChatFormatting.RED + "Failed to export blueprint: " + e.getMessage()));
+            return 0;
+        }
+    }
 
-                            // Add the Optional type adapter factory
-                            gsonBuilder.registerTypeAdapterFactory(new TypeAdapterFactory() {
-                                @SuppressWarnings("unchecked")
-                                @Override
-                                public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
-                                    if (!Optional.class.isAssignableFrom(type.getRawType())) {
-                                        return null;
-                                    }
-                                    Type innerType = ((ParameterizedType) type.getType()).getActualTypeArguments()[0];
-                                    TypeAdapter<?> innerAdapter = gson.getAdapter(TypeToken.get(innerType));
-                                    return (TypeAdapter<T>) new OptionalTypeAdapter<>(innerAdapter);
-                                }
-                            });
+    // Saves a structure template known to the server, from a data pack or a structure block, as a binary blueprint
+    private static int importStructure(CommandSourceStack source, ResourceLocation id) {
+        try {
+            Optional<StructureTemplate> template = source.getServer().getStructureManager().get(id);
+            if (template.isEmpty()) {
+                source.sendFailure(Component.literal(ChatFormatting.RED + "No structure template named " + id));
+                return 0;
+            }
 
-                            Gson gson = gsonBuilder.create();
-                            LOGGER.debug("Starting JSON serialization");
-                            String json = gson.toJson(blueprint);
-                            LOGGER.debug("JSON serialization completed successfully");
-                            
-                            // Save file to a blueprints folder inside the screenshots directory
-                            Path gameDir = source.getServer().getServerDirectory();
-                            Path blueprintDir = gameDir.resolve("screenshots").resolve("blueprints");
-                            LOGGER.debug("Creating blueprint directory at: {}", blueprintDir);
-                            
-                            if (!blueprintDir.toFile().exists() && !blueprintDir.toFile().mkdirs()) {
-                                throw new IOException("Failed to create blueprints directory");
-                            }
+            Blueprint blueprint = BlueprintStructureFormat.fromTag(id.getPath().replace('/', '_'),
+                template.get().save(new CompoundTag()), source.getLevel().holderLookup(Registries.BLOCK));
+            Path output = getBlueprintDirectory().resolve(blueprint.getName() + BlueprintBinaryFormat.EXTENSION);
+            blueprint.saveToBinary(output.toString(), true);
 
-                            String timestamp = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss").format(LocalDateTime.now());
-                            File outputFile = blueprintDir.resolve("blueprint_" + timestamp + ".json").toFile();
-                            LOGGER.debug("Saving blueprint to: {}", outputFile.getAbsolutePath());
+            LOGGER.info("Imported structure template {} to {}", id, output);
+            source.sendSuccess(() -> Component.literal(ChatFormatting.GREEN + "Structure template imported to: "
+                + output), false);
+            return 1;
+        } catch (Exception e) {
+            LOGGER.error("Failed to import structure template {}", id, e);
+            source.sendFailure(Component.literal(ChatFormatting.RED + "Failed to import structure template: " + e.getMessage()));
+            return 0;
+        }
+    }
 
-                            try (FileWriter writer = new FileWriter(outputFile)) {
-                                writer.write(json);
-                                LOGGER.info("Successfully saved blueprint to: {}", outputFile.getAbsolutePath());
-                                source.sendSuccess(() -> Component.literal(ChatFormatting.GREEN + "Blueprint saved to: " +
-                                    outputFile.getAbsolutePath()), false);
-                                BlueprintSelectionHandler.clearPlayerSelections(playerId);
-                            }
-                        } catch (IOException e) {
-                            LOGGER.error("Failed to save blueprint", e);
-                            source.sendFailure(Component.literal(ChatFormatting.RED + "Failed to save blueprint: " + e.getMessage()));
-                            return 0;
-                        }
-                        return 1;
-                    } catch (Exception e) {
-                        LOGGER.error("Unexpected error during blueprint save", e);
-                        source.sendFailure(Component.literal(ChatFormatting.RED + "An unexpected error occurred: " + e.getMessage()));
-                        return 0;
-                    }
-                })
-        );
+    // Blueprints are saved to the directory the library loads and watches, so they can be used straight away
+    private static Path getBlueprintDirectory() throws IOException {
+        Path blueprintDir = BlueprintLibrary.configDirectory().toAbsolutePath().normalize();
+        LOGGER.debug("Creating blueprint directory at: {}", blueprintDir);
+        if (!blueprintDir.toFile().exists() && !blueprintDir.toFile().mkdirs()) {
+            throw new IOException("Failed to create blueprints directory");
+        }
+        return blueprintDir;
     }
 
-    private static List<StructureBlockInfo> extractBlockData(BlueprintSelection selection, CommandSourceStack source) {
+    private static Blueprint extractBlueprint(BlueprintSelection selection, CommandSourceStack source,
+                                              int width, int height, int length) {
         ServerLevel world = source.getLevel();
         BlockPos corner1 = selection.getCorner1();
         BlockPos corner2 = selection.getCorner2();
-        List<StructureBlockInfo> blockData = new ArrayList<>();
-        
+        Blueprint.Builder builder = new Blueprint.Builder("player_blueprint", width, height, length);
+
         LOGGER.debug("Starting block data extraction from {} to {}", corner1, corner2);
         int blockCount = 0;
 
         int minX = Math.min(corner1.getX(), corner2.getX());
         int minY = Math.min(corner1.getY(), corner2.getY());
         int minZ = Math.min(corner1.getZ(), corner2.getZ());
+        BlockPos.MutableBlockPos worldPos = new BlockPos.MutableBlockPos();
 
         try {
             for (int x = minX; x <= Math.max(corner1.getX(), corner2.getX()); x++) {
                 for (int y = minY; y <= Math.max(corner1.getY(), corner2.getY()); y++) {
                     for (int z = minZ; z <= Math.max(corner1.getZ(), corner2.getZ()); z++) {
-                        BlockPos worldPos = new BlockPos(x, y, z);
-                        BlockState state = world.getBlockState(worldPos);
+                        BlockState state = world.getBlockState(worldPos.set(x, y, z));
                         // Store positions relative to the minimum corner
-                        BlockPos relativePos = new BlockPos(x - minX, y - minY, z - minZ);
-                        blockData.add(new StructureBlockInfo(relativePos, state, null));
+                        builder.set(x - minX, y - minY, z - minZ, state);
                         blockCount++;
                     }
                 }
@@ -246,7 +285,7 @@ public class BlueprintSaveCommand {
             LOGGER.error("Error during block data extraction at count {}", blockCount, e);
             throw e;
         }
-        return blockData;
+        return builder.build();
     }
 
     @SubscribeEvent
@@ -0,0 +1,141 @@
+package com.davisodom.villages.command;
+
+import com.davisodom.villages.locator.IndexedStructure;
+import com.davisodom.villages.locator.LatencyHistogram;
+import com.davisodom.villages.locator.LocatorMetrics;
+import com.davisodom.villages.locator.RegionStructureScanner;
+import com.davisodom.villages.locator.StructureSurvey;
+import com.davisodom.villages.locator.VillageIndex;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import net.minecraft.ChatFormatting;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.StructureTags;
+
+import java.util.Map;
+
+/**
+ * Operator commands for the village locator, under {@code /villages}.
+ */
+public class VillagesCommand {
+    private static final int DEFAULT_SURVEY_RESULTS = 16;
+
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(
+            Commands.literal("villages")
+                .requires(source -> source.hasPermission(2))
+                .then(Commands.literal("stats")
+                    .executes(VillagesCommand::showStats)
+                    .then(Commands.literal("reset")
+                        .executes(VillagesCommand::resetStats)))
+                .then(Commands.literal("index")
+                    .then(Commands.literal("scan")
+                        .executes(VillagesCommand::scanRegions)))
+                .then(Commands.literal("survey")
+                    .then(Commands.argument("radius", IntegerArgumentType.integer(100, 30000))
+                        .executes(context -> survey(context, DEFAULT_SURVEY_RESULTS))
+                        .then(Commands.argument("limit", IntegerArgumentType.integer(1, 256))
+                            .executes(context -> survey(context, IntegerArgumentType.getInteger(context, "limit"))))))
+        );
+    }
+
+    private static int showStats(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        LocatorMetrics metrics = LocatorMetrics.get();
+
+        send(source, Component.literal("=== Village Locator Stats ===").withStyle(ChatFormatting.GREEN));
+        send(source, Component.literal(String.format("Searches: %d started, %d coalesced",
+            metrics.getSearchesStarted(), metrics.getSearchesCoalesced())));
+        send(source, Component.literal(String.format("Rejected: %d rate limited, %d busy, %d unsupported, %d unavailable",
+            metrics.getRejectedRateLimited(), metrics.getRejectedBusy(), metrics.getRejectedUnsupported(),
+            metrics.getRejectedUnavailable())));
+        send(source, Component.literal(String.format("Queue: %d waiting for a thread, %d jobs on the server thread",
+            metrics.getQueueDepth(), metrics.getPendingJobs())));
+        send(source, Component.literal(String.format("Structure checks: %d placement cells, %d findNearestMapStructure calls",
+            metrics.getCellChecks(), metrics.getProbeCalls())));
+        send(source, latencyLine("Search latency", metrics.searchLatency()));
+        send(source, latencyLine("Ring latency", metrics.ringLatency()));
+
+        Map<String, Long> hits = metrics.getCacheHitsByLevel();
+        Map<String, Long> misses = metrics.getCacheMissesByLevel();
+        for (ServerLevel level : source.getServer().getAllLevels()) {
+            String dimension = level.dimension().location().toString();
+            long levelHits = hits.getOrDefault(dimension, 0L);
+            long levelMisses = misses.getOrDefault(dimension, 0L);
+            long total = levelHits + levelMisses;
+            VillageIndex index = VillageIndex.get(level);
+            send(source, Component.literal(String.format(
+                "%s: %d hits, %d misses (%.1f%% hit rate); %d structures, %d entries, ~%d KiB indexed",
+                dimension, levelHits, levelMisses, total == 0 ? 0.0 : 100.0 * levelHits / total,
+                index.structureCount(), index.entryCount(), index.estimateMemoryBytes() / 1024)));
+        }
+        return 1;
+    }
+
+    private static int resetStats(CommandContext<CommandSourceStack> context) {
+        LocatorMetrics.get().reset();
+        context.getSource().sendSuccess(() -> Component.literal("Village locator stats reset.").withStyle(ChatFormatting.GREEN), true);
+        return 1;
+    }
+
+    private static int scanRegions(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        ServerLevel level = source.getLevel();
+        send(source, Component.literal(String.format("Scanning region files of %s for structure starts...",
+            level.dimension().location())));
+
+        RegionStructureScanner.scan(level).whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                source.sendFailure(Component.literal("Region scan failed: " + error.getMessage()));
+                return;
+            }
+            send(source, Component.literal(String.format(
+                "Scanned %d region files and %d chunks in %.1fs; indexed %d placement cells with %d structures",
+                result.regions(), result.chunks(), result.nanos() / 1_000_000_000.0, result.cells(), result.structures()))
+                .withStyle(ChatFormatting.GREEN));
+        }, source.getServer());
+        return 1;
+    }
+
+    private static int survey(CommandContext<CommandSourceStack> context, int limit) {
+        CommandSourceStack source = context.getSource();
+        int radius = IntegerArgumentType.getInteger(context, "radius");
+        BlockPos origin = BlockPos.containing(source.getPosition());
+        send(source, Component.literal(String.format("Surveying villages within %d blocks on %d threads...",
+            radius, StructureSurvey.parallelism())));
+
+        StructureSurvey.survey(source.getLevel(), StructureTags.VILLAGE, origin, radius, limit).whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                source.sendFailure(Component.literal("Survey failed: " + error.getMessage()));
+                return;
+            }
+            send(source, Component.literal(String.format("Found %d villages; evaluated %d placement cells in %.1fms",
+                result.structures().size(), result.evaluated(), result.nanos() / 1_000_000.0))
+                .withStyle(ChatFormatting.GREEN));
+            for (IndexedStructure structure : result.structures()) {
+                BlockPos pos = structure.pos();
+                long dx = pos.getX() - origin.getX();
+                long dz = pos.getZ() - origin.getZ();
+                int distance = (int) Math.sqrt(dx * dx + dz * dz);
+                send(source, Component.literal(String.format("%s at (%d, %d), %d blocks away",
+                    structure.type(), pos.getX(), pos.getZ(), distance)));
+            }
+        }, source.getServer());
+        return 1;
+    }
+
+    private static Component latencyLine(String name, LatencyHistogram histogram) {
+        return Component.literal(String.format("%s: p50 %.1fms, p99 %.1fms, max %.1fms over %d samples",
+            name, histogram.percentileMicros(50) / 1000.0, histogram.percentileMicros(99) / 1000.0,
+            histogram.maxMicros() / 1000.0, histogram.count()));
+    }
+
+    private static void send(CommandSourceStack source, Component message) {
+        source.sendSuccess(() -> message, false);
+    }
+}
@@ -0,0 +1,39 @@
+package com.davisodom.villages.locator;
+
+import com.davisodom.villages.Villages;
+import com.mojang.logging.LogUtils;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+/**
+ * Periodically expires and evicts stale entries from each level's {@link VillageIndex},
+ * keeping the index bounded on servers that run for weeks.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class IndexMaintenance {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            // Only run this cleanup once every 5 minutes (6000 ticks)
+            if (event.getServer().getTickCount() % 6000 == 0) {
+                for (ServerLevel level : event.getServer().getAllLevels()) {
+                    // Dimensions nobody has searched have nothing to evict, so don't give them an index
+                    VillageIndex index = VillageIndex.getIfExists(level);
+                    if (index == null) {
+                        continue;
+                    }
+                    int removed = index.evictStale();
+                    if (removed > 0) {
+                        LOGGER.debug("Evicted {} stale index entries in {}, {} remain",
+                            removed, level.dimension().location(), index.entryCount());
+                    }
+                }
+            }
+        }
+    }
+}
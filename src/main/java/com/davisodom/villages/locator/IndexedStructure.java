@@ -0,0 +1,12 @@
+package com.davisodom.villages.locator;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * A structure recorded in a {@link VillageIndex}.
+ *
+ * @param pos  The structure's locate position
+ * @param type The registry id of the structure
+ */
+public record IndexedStructure(BlockPos pos, ResourceLocation type) {}
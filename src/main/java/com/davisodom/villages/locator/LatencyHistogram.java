@@ -0,0 +1,88 @@
+package com.davisodom.villages.locator;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with power-of-two microsecond buckets.
+ * <p>
+ * Recording is a couple of adder increments, so it is cheap enough for the server thread.
+ * Percentiles are read as the upper bound of the bucket they fall in, which is accurate
+ * to within a factor of two; plenty for telling a 1ms search from a 100ms one.
+ */
+public class LatencyHistogram {
+    // Bucket i holds samples below 2^(i+1) microseconds; the last bucket holds everything longer
+    private static final int BUCKETS = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros | 1));
+        buckets[bucket].increment();
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long meanMicros() {
+        long samples = count.sum();
+        return samples == 0 ? 0 : totalMicros.sum() / samples;
+    }
+
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Estimates a percentile from the buckets.
+     *
+     * @param percentile Between 0 and 100
+     * @return The upper bound of the bucket holding the percentile in microseconds, or 0 if
+     *         nothing has been recorded
+     */
+    public long percentileMicros(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long samples = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            samples += counts[i];
+        }
+        if (samples == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(samples * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Never report more than the slowest sample actually seen
+                return Math.min((1L << (i + 1)) - 1, maxMicros());
+            }
+        }
+        return maxMicros();
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        totalMicros.reset();
+        maxMicros.reset();
+    }
+}
@@ -0,0 +1,268 @@
+package com.davisodom.villages.locator;
+
+import com.davisodom.villages.Villages;
+import com.mojang.logging.LogUtils;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for village searches, shown by {@code /villages stats}
+ * and published over JMX while a server is running.
+ * <p>
+ * Everything is recorded with adders, so it is safe and cheap to record from the locator
+ * pool and the server thread alike. Metrics are reset when a server starts.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public final class LocatorMetrics implements LocatorMetricsMXBean {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String OBJECT_NAME = "com.davisodom.villages:type=LocatorMetrics";
+    private static final LocatorMetrics INSTANCE = new LocatorMetrics();
+
+    public enum Rejection {
+        RATE_LIMITED,
+        BUSY,
+        UNSUPPORTED,
+        // No locator was running to answer, such as while the server starts or stops
+        UNAVAILABLE
+    }
+
+    // A search is a hit when the index already covered its whole area
+    private record LevelCounters(LongAdder hits, LongAdder misses) {
+        LevelCounters() {
+            this(new LongAdder(), new LongAdder());
+        }
+    }
+
+    private final Map<ResourceKey<Level>, LevelCounters> levels = new ConcurrentHashMap<>();
+    private final LongAdder searchesStarted = new LongAdder();
+    private final LongAdder searchesCoalesced = new LongAdder();
+    private final LongAdder probeCalls = new LongAdder();
+    private final LongAdder cellChecks = new LongAdder();
+    private final LongAdder[] rejected = new LongAdder[Rejection.values().length];
+    // From admitting a request to sending its final batch
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+    // From a ring's first structure check to its last, across ticks
+    private final LatencyHistogram ringLatency = new LatencyHistogram();
+
+    private LocatorMetrics() {
+        for (int i = 0; i < rejected.length; i++) {
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    public static LocatorMetrics get() {
+        return INSTANCE;
+    }
+
+    public void recordSearchStarted(ResourceKey<Level> dimension, boolean indexed) {
+        searchesStarted.increment();
+        LevelCounters counters = levels.computeIfAbsent(dimension, key -> new LevelCounters());
+        (indexed ? counters.hits() : counters.misses()).increment();
+    }
+
+    public void recordSearchCoalesced() {
+        searchesCoalesced.increment();
+    }
+
+    public void recordProbe() {
+        probeCalls.increment();
+    }
+
+    public void recordCellCheck() {
+        cellChecks.increment();
+    }
+
+    public void recordRejected(Rejection reason) {
+        rejected[reason.ordinal()].increment();
+    }
+
+    public void recordSearchLatency(long nanos) {
+        searchLatency.recordNanos(nanos);
+    }
+
+    public void recordRingLatency(long nanos) {
+        ringLatency.recordNanos(nanos);
+    }
+
+    public LatencyHistogram searchLatency() {
+        return searchLatency;
+    }
+
+    public LatencyHistogram ringLatency() {
+        return ringLatency;
+    }
+
+    public long rejected(Rejection reason) {
+        return rejected[reason.ordinal()].sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return levels.values().stream().mapToLong(counters -> counters.hits().sum()).sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return levels.values().stream().mapToLong(counters -> counters.misses().sum()).sum();
+    }
+
+    @Override
+    public Map<String, Long> getCacheHitsByLevel() {
+        Map<String, Long> hits = new TreeMap<>();
+        levels.forEach((dimension, counters) -> hits.put(dimension.location().toString(), counters.hits().sum()));
+        return hits;
+    }
+
+    @Override
+    public Map<String, Long> getCacheMissesByLevel() {
+        Map<String, Long> misses = new TreeMap<>();
+        levels.forEach((dimension, counters) -> misses.put(dimension.location().toString(), counters.misses().sum()));
+        return misses;
+    }
+
+    @Override
+    public long getSearchesStarted() {
+        return searchesStarted.sum();
+    }
+
+    @Override
+    public long getSearchesCoalesced() {
+        return searchesCoalesced.sum();
+    }
+
+    @Override
+    public long getProbeCalls() {
+        return probeCalls.sum();
+    }
+
+    @Override
+    public long getCellChecks() {
+        return cellChecks.sum();
+    }
+
+    @Override
+    public long getRejectedRateLimited() {
+        return rejected(Rejection.RATE_LIMITED);
+    }
+
+    @Override
+    public long getRejectedBusy() {
+        return rejected(Rejection.BUSY);
+    }
+
+    @Override
+    public long getRejectedUnsupported() {
+        return rejected(Rejection.UNSUPPORTED);
+    }
+
+    @Override
+    public long getRejectedUnavailable() {
+        return rejected(Rejection.UNAVAILABLE);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        LocatorService service = LocatorService.get();
+        return service == null ? 0 : service.queueDepth();
+    }
+
+    @Override
+    public int getPendingJobs() {
+        LocatorService service = LocatorService.get();
+        return service == null ? 0 : service.getScheduler().pendingJobs();
+    }
+
+    @Override
+    public long getSearchLatencyCount() {
+        return searchLatency.count();
+    }
+
+    @Override
+    public long getSearchLatencyP50Micros() {
+        return searchLatency.percentileMicros(50);
+    }
+
+    @Override
+    public long getSearchLatencyP99Micros() {
+        return searchLatency.percentileMicros(99);
+    }
+
+    @Override
+    public long getSearchLatencyMaxMicros() {
+        return searchLatency.maxMicros();
+    }
+
+    @Override
+    public long getRingLatencyCount() {
+        return ringLatency.count();
+    }
+
+    @Override
+    public long getRingLatencyP50Micros() {
+        return ringLatency.percentileMicros(50);
+    }
+
+    @Override
+    public long getRingLatencyP99Micros() {
+        return ringLatency.percentileMicros(99);
+    }
+
+    @Override
+    public long getRingLatencyMaxMicros() {
+        return ringLatency.maxMicros();
+    }
+
+    @Override
+    public void reset() {
+        levels.clear();
+        searchesStarted.reset();
+        searchesCoalesced.reset();
+        probeCalls.reset();
+        cellChecks.reset();
+        for (LongAdder counter : rejected) {
+            counter.reset();
+        }
+        searchLatency.reset();
+        ringLatency.reset();
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        INSTANCE.reset();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to publish village locator metrics over JMX", e);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to remove village locator metrics from JMX", e);
+        }
+    }
+}
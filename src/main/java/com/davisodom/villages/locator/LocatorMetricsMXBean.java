@@ -0,0 +1,54 @@
+package com.davisodom.villages.locator;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link LocatorMetrics}. Latencies are in microseconds.
+ */
+public interface LocatorMetricsMXBean {
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    Map<String, Long> getCacheHitsByLevel();
+
+    Map<String, Long> getCacheMissesByLevel();
+
+    long getSearchesStarted();
+
+    long getSearchesCoalesced();
+
+    long getProbeCalls();
+
+    long getCellChecks();
+
+    long getRejectedRateLimited();
+
+    long getRejectedBusy();
+
+    long getRejectedUnsupported();
+
+    long getRejectedUnavailable();
+
+    int getQueueDepth();
+
+    int getPendingJobs();
+
+    long getSearchLatencyCount();
+
+    long getSearchLatencyP50Micros();
+
+    long getSearchLatencyP99Micros();
+
+    long getSearchLatencyMaxMicros();
+
+    long getRingLatencyCount();
+
+    long getRingLatencyP50Micros();
+
+    long getRingLatencyP99Micros();
+
+    long getRingLatencyMaxMicros();
+
+    void reset();
+}
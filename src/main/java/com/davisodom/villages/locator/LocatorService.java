@@ -0,0 +1,358 @@
+package com.davisodom.villages.locator;
+
+import com.davisodom.villages.Config;
+import com.davisodom.villages.Villages;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mojang.logging.LogUtils;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Runs village searches on a dedicated, bounded thread pool.
+ * <p>
+ * The pool plans each search and answers it straight from the index when the area is
+ * already covered. Structure checks for uncovered areas are handed to the
+ * {@link SearchScheduler}, which runs them on the server thread within a per-tick budget.
+ * <p>
+ * Each requester has at most one search in flight; a new request supersedes the previous
+ * one. Requests for the same area are coalesced into a single shared search, and when the
+ * queue is full or too many searches are already running, new searches are rejected so
+ * callers can report that the server is busy instead of piling up work.
+ * <p>
+ * Subscribers are told about villages as each ring of the search completes, so the nearest
+ * village can be reported long before a wide search has finished.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class LocatorService {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    @Nullable
+    private static volatile LocatorService instance;
+
+    private final ThreadPoolExecutor executor;
+    private final SearchScheduler scheduler = new SearchScheduler();
+    // Guarded by this
+    private final Map<SearchKey, SharedSearch> searches = new HashMap<>();
+    private final Map<UUID, Subscription> inFlight = new HashMap<>();
+
+    // Requests are coalesced when they come from the same coverage region with the same parameters
+    private record SearchKey(ResourceKey<Level> dimension, TagKey<Structure> tag, int regionX, int regionZ,
+                             int radius, int limit) {}
+
+    /**
+     * The answer to one requester's search.
+     *
+     * @param structures   The structures nearest to the origin, nearest first
+     * @param provenRadius How far around the origin every structure is known to be included; the
+     *                     full search radius unless the search stopped early or failed
+     */
+    public record SearchResult(List<IndexedStructure> structures, int provenRadius) {}
+
+    private static final class SharedSearch {
+        final SearchKey key;
+        // The centre the search is planned around
+        final BlockPos center;
+        // Completed with the number of rings that ran
+        final CompletableFuture<Integer> done = new CompletableFuture<>();
+        // Run on the server thread after each ring of the search
+        final List<Runnable> progressListeners = new CopyOnWriteArrayList<>();
+        // One per subscriber, each checking its own origin, radius and limit against the rings run so far
+        final List<IntPredicate> satisfiedChecks = new CopyOnWriteArrayList<>();
+        // Set before any ring runs or done completes
+        volatile VillageLocator.SearchPlan plan;
+        // Guarded by the service
+        int subscribers;
+        volatile boolean cancelled;
+
+        SharedSearch(SearchKey key) {
+            this.key = key;
+            // Search from the centre of the region, so every origin in it is close to the centre
+            int regionBlocks = VillageIndex.REGION_SIZE << 4;
+            this.center = new BlockPos(
+                (key.regionX() << VillageIndex.REGION_SHIFT << 4) + regionBlocks / 2,
+                0,
+                (key.regionZ() << VillageIndex.REGION_SHIFT << 4) + regionBlocks / 2);
+        }
+
+        /**
+         * Returns how far around a subscriber's origin everything is known once some rings have run.
+         */
+        int provenRadius(BlockPos origin, int radius, int completedRings) {
+            double offset = Math.hypot(origin.getX() - center.getX(), origin.getZ() - center.getZ());
+            return (int) Math.max(0, Math.min(radius, plan.provenRadius(completedRings) - Math.ceil(offset)));
+        }
+    }
+
+    private record Subscription(SharedSearch search, CompletableFuture<SearchResult> result, Runnable progressListener,
+                                IntPredicate satisfied) {}
+
+    private LocatorService(int threads, int queueSize) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            new ThreadFactoryBuilder().setNameFormat("Villages Locator #%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the running service, or null if no server is running.
+     */
+    @Nullable
+    public static LocatorService get() {
+        return instance;
+    }
+
+    /**
+     * Submits a village search for a requester, superseding any search it already has in flight.
+     *
+     * @param requester Identifies who the search is for, usually a player UUID
+     * @param level     The level to search; the caller must have resolved its index on the server thread
+     * @param index     The index for the level
+     * @param tag       The structure tag to search for
+     * @param origin    The position to search from
+     * @param radius    Search radius in blocks
+     * @param limit     Maximum number of villages to return
+     * @param progress  Called on the server thread after each ring of the search with the structures
+     *                  nearest to the origin found so far
+     * @return A future completed with the structures nearest to the origin. It is cancelled if the
+     *         request is superseded, and completes exceptionally if the search fails.
+     *         The search stops early once no ring left to run could hold anything nearer than
+     *         the {@code limit}-th structure found, so the result is always the true nearest.
+     * @throws RejectedExecutionException If the locator queue is full, or the concurrent search cap is reached
+     */
+    public CompletableFuture<SearchResult> submit(UUID requester, ServerLevel level, VillageIndex index,
+                                                  TagKey<Structure> tag, BlockPos origin, int radius, int limit,
+                                                  Consumer<List<IndexedStructure>> progress) {
+        int regionX = SectionPos.blockToSectionCoord(origin.getX()) >> VillageIndex.REGION_SHIFT;
+        int regionZ = SectionPos.blockToSectionCoord(origin.getZ()) >> VillageIndex.REGION_SHIFT;
+        SearchKey key = new SearchKey(level.dimension(), tag, regionX, regionZ, radius, limit);
+        // Resolved here rather than on the locator pool, as /reload rebinds tag contents on the server thread
+        VillageLocator.SearchTarget target = VillageLocator.resolve(level, index, tag);
+        Set<ResourceLocation> types = target.types();
+
+        Subscription subscription;
+        synchronized (this) {
+            SharedSearch search = searches.get(key);
+            if (search == null) {
+                // Joining a running search is free, but starting another one counts against the cap.
+                // A search only this requester is waiting for is about to be superseded, so it doesn't count.
+                int running = searches.size();
+                Subscription previous = inFlight.get(requester);
+                if (previous != null && previous.search().subscribers <= 1) {
+                    running--;
+                }
+                if (running >= Config.maxConcurrentSearches) {
+                    throw new RejectedExecutionException("Too many concurrent village searches");
+                }
+                search = new SharedSearch(key);
+                startSearch(search, level, index, target, radius);
+                searches.put(key, search);
+            } else {
+                LocatorMetrics.get().recordSearchCoalesced();
+            }
+            // Subscribe before superseding, so repeating a request doesn't abandon a search for the same area
+            search.subscribers++;
+            cancel(requester);
+
+            // Every subscriber reads its own answer from the index once the shared search has covered the area
+            SharedSearch shared = search;
+            CompletableFuture<SearchResult> result = search.done.thenApply(rings -> new SearchResult(
+                index.findNearest(origin, radius, limit, types), shared.provenRadius(origin, radius, rings)));
+            Runnable progressListener = () -> progress.accept(index.findNearest(origin, radius, limit, types));
+            // Enough results only settles the answer once nothing unsearched can lie closer than the last of them
+            IntPredicate satisfied = rings -> {
+                int proven = shared.provenRadius(origin, radius, rings);
+                if (proven >= radius) {
+                    return true;
+                }
+                List<IndexedStructure> nearest = index.findNearest(origin, radius, limit, types);
+                if (nearest.size() < limit) {
+                    return false;
+                }
+                BlockPos last = nearest.get(limit - 1).pos();
+                return Math.hypot(last.getX() - origin.getX(), last.getZ() - origin.getZ()) <= proven;
+            };
+            subscription = new Subscription(search, result, progressListener, satisfied);
+            search.progressListeners.add(progressListener);
+            search.satisfiedChecks.add(satisfied);
+            inFlight.put(requester, subscription);
+        }
+
+        subscription.result().whenComplete((villages, error) -> {
+            synchronized (this) {
+                inFlight.remove(requester, subscription);
+            }
+        });
+        return subscription.result();
+    }
+
+    private void startSearch(SharedSearch search, ServerLevel level, VillageIndex index, VillageLocator.SearchTarget target,
+                             int radius) {
+        // Widened so the whole region is covered
+        BlockPos center = search.center;
+        int searchRadius = radius + (VillageIndex.REGION_SIZE << 4);
+
+        search.done.whenComplete((ignored, error) -> {
+            if (error != null && !(error instanceof CancellationException)) {
+                LOGGER.error("Village search failed in {}", search.key.dimension().location(), error);
+            }
+            synchronized (this) {
+                searches.remove(search.key, search);
+            }
+        });
+
+        executor.execute(() -> {
+            if (search.cancelled) {
+                // Anyone who joined since is waiting on this
+                search.done.cancel(false);
+                return;
+            }
+            try {
+                VillageLocator.SearchPlan plan = VillageLocator.planSearch(level, index, target, center, searchRadius);
+                search.plan = plan;
+                List<List<Runnable>> rings = plan.rings();
+                boolean indexed = rings.stream().allMatch(List::isEmpty);
+                LocatorMetrics.get().recordSearchStarted(search.key.dimension(), indexed);
+                if (indexed) {
+                    // The whole area is already indexed
+                    search.done.complete(rings.size());
+                    return;
+                }
+
+                scheduler.submit(new SearchJob(rings,
+                    () -> search.progressListeners.forEach(Runnable::run),
+                    // Each subscriber has its own origin, so the widened area says nothing about any one of them
+                    completed -> search.satisfiedChecks.stream().allMatch(check -> check.test(completed)),
+                    () -> search.cancelled,
+                    search.done));
+            } catch (Exception e) {
+                search.done.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Cancels the search a requester has in flight, if any.
+     * The shared search itself stops once nobody is waiting for it any more.
+     */
+    public synchronized void cancel(UUID requester) {
+        Subscription subscription = inFlight.remove(requester);
+        if (subscription == null) {
+            return;
+        }
+
+        subscription.result().cancel(false);
+        SharedSearch search = subscription.search();
+        search.progressListeners.remove(subscription.progressListener());
+        search.satisfiedChecks.remove(subscription.satisfied());
+        if (--search.subscribers <= 0) {
+            search.cancelled = true;
+            searches.remove(search.key, search);
+        }
+    }
+
+    private synchronized void cancelAll(@Nullable ResourceKey<Level> dimension) {
+        List<Subscription> cancelled = new ArrayList<>();
+        inFlight.values().removeIf(subscription -> {
+            if (dimension != null && !subscription.search().key.dimension().equals(dimension)) {
+                return false;
+            }
+            cancelled.add(subscription);
+            return true;
+        });
+        searches.values().removeIf(search -> dimension == null || search.key.dimension().equals(dimension));
+
+        // Cancel outside the iteration, as completion handlers touch the in-flight map
+        for (Subscription subscription : cancelled) {
+            subscription.search().cancelled = true;
+            subscription.result().cancel(false);
+        }
+    }
+
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public SearchScheduler getScheduler() {
+        return scheduler;
+    }
+
+    private void shutdown() {
+        cancelAll(null);
+        scheduler.clear();
+        // Searches stop at their next ring once cancelled, so there is no need to interrupt them
+        executor.shutdown();
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        instance = new LocatorService(Config.locatorThreads, Config.locatorQueueSize);
+        LOGGER.debug("Started village locator with {} threads and a queue of {}",
+            Config.locatorThreads, Config.locatorQueueSize);
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        LocatorService service = instance;
+        instance = null;
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        LocatorService service = instance;
+        if (service != null && event.phase == TickEvent.Phase.END) {
+            service.scheduler.tick(Config.searchTickBudgetMicros * 1000L);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        LocatorService service = instance;
+        if (service != null) {
+            service.cancel(event.getEntity().getUUID());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLevelUnload(LevelEvent.Unload event) {
+        LocatorService service = instance;
+        if (service != null && event.getLevel() instanceof ServerLevel serverLevel) {
+            LOGGER.debug("Level unload detected, cancelling village searches in: {}",
+                serverLevel.dimension().location());
+            service.cancelAll(serverLevel.dimension());
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.davisodom.villages.locator;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe map from packed long keys to packed long values, with per-entry ages and
+ * second-chance eviction.
+ * <p>
+ * Entries live in flat primitive arrays, so an entry costs under 30 bytes instead of the
+ * hundred or more taken by boxed keys, map nodes and position objects. Every entry records
+ * when it was stored, and reads mark it as recently used. When the map grows past its
+ * budget, a clock hand sweeps the table and evicts entries that have not been read since
+ * its last pass. Pinned entries never expire and are never evicted.
+ */
+public class PackedLongMap {
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final byte USED = 1;
+    private static final byte PINNED = 2;
+    private static final byte REFERENCED = 4;
+
+    private final long missingValue;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock. Reads may set the REFERENCED flag while holding only the read lock,
+    // which is a benign race: the worst outcome is an entry getting one extra pass of the clock.
+    private long[] keys;
+    private long[] values;
+    private long[] stamps;
+    private byte[] flags;
+    private int mask;
+    private int size;
+    private int clockHand;
+
+    /**
+     * @param missingValue Returned by {@link #get} for keys that are not present or have expired
+     */
+    public PackedLongMap(long missingValue) {
+        this.missingValue = missingValue;
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        stamps = new long[capacity];
+        flags = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @param now Current time in milliseconds
+     * @param ttl Maximum age in milliseconds of unpinned entries, or 0 for no limit
+     * @return The value, or the missing value if the key is absent or its entry has expired
+     */
+    public long get(long key, long now, long ttl) {
+        lock.readLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0 || isExpired(slot, now, ttl)) {
+                return missingValue;
+            }
+            flags[slot] |= REFERENCED;
+            return values[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean containsKey(long key, long now, long ttl) {
+        return get(key, now, ttl) != missingValue;
+    }
+
+    /**
+     * Stores a value, replacing any existing entry and resetting its age.
+     *
+     * @param pinned Whether the entry is exempt from expiry and eviction
+     * @param now    Current time in milliseconds
+     * @return The previous value, or the missing value if the key was not present
+     */
+    public long put(long key, long value, boolean pinned, long now) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(key);
+            long previous = missingValue;
+            if (slot >= 0) {
+                previous = values[slot];
+            } else {
+                if (size + 1 > (int) (keys.length * LOAD_FACTOR)) {
+                    rehash(keys.length * 2);
+                }
+                slot = (int) HashCommon.mix(key) & mask;
+                while ((flags[slot] & USED) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+            stamps[slot] = now;
+            flags[slot] = (byte) (USED | REFERENCED | (pinned ? PINNED : 0));
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes expired entries, then evicts unpinned entries second-chance style until the
+     * map holds at most {@code maxEntries}.
+     *
+     * @param maxEntries Entry budget, which pinned entries may still exceed
+     * @param now        Current time in milliseconds
+     * @param ttl        Maximum age in milliseconds of unpinned entries, or 0 for no limit
+     * @return The number of entries removed
+     */
+    public int evict(int maxEntries, long now, long ttl) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            if (ttl > 0) {
+                for (int slot = 0; slot < keys.length; ) {
+                    if ((flags[slot] & USED) != 0 && isExpired(slot, now, ttl)) {
+                        // Removal shifts a later entry into this slot, so look at it again
+                        removeAt(slot);
+                        removed++;
+                    } else {
+                        slot++;
+                    }
+                }
+            }
+
+            // Two full sweeps are enough to clear every referenced flag once
+            int budget = keys.length * 2;
+            while (size > maxEntries && budget-- > 0) {
+                int slot = clockHand;
+                byte slotFlags = flags[slot];
+                if ((slotFlags & USED) == 0 || (slotFlags & PINNED) != 0) {
+                    clockHand = (slot + 1) & mask;
+                } else if ((slotFlags & REFERENCED) != 0) {
+                    flags[slot] = (byte) (slotFlags & ~REFERENCED);
+                    clockHand = (slot + 1) & mask;
+                } else {
+                    removeAt(slot);
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the live entries into parallel arrays of keys, values and storage times.
+     */
+    public long[][] snapshot() {
+        lock.readLock().lock();
+        try {
+            long[][] snapshot = new long[3][size];
+            int i = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if ((flags[slot] & USED) != 0) {
+                    snapshot[0][i] = keys[slot];
+                    snapshot[1][i] = values[slot];
+                    snapshot[2][i] = stamps[slot];
+                    i++;
+                }
+            }
+            return snapshot;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimates the heap used by the table arrays.
+     */
+    public long estimateMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) keys.length * (3 * Long.BYTES + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isExpired(int slot, long now, long ttl) {
+        return ttl > 0 && (flags[slot] & PINNED) == 0 && now - stamps[slot] > ttl;
+    }
+
+    private int find(long key) {
+        int slot = (int) HashCommon.mix(key) & mask;
+        while ((flags[slot] & USED) != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Removes an entry by shifting later entries of the same probe run back into the gap
+    private void removeAt(int slot) {
+        int last = slot;
+        int pos = slot;
+        while (true) {
+            pos = (pos + 1) & mask;
+            if ((flags[pos] & USED) == 0) {
+                break;
+            }
+            int ideal = (int) HashCommon.mix(keys[pos]) & mask;
+            // Move the entry back only if its ideal slot isn't cyclically within (last, pos]
+            boolean canMove = last <= pos ? (last >= ideal || ideal > pos) : (last >= ideal && ideal > pos);
+            if (canMove) {
+                keys[last] = keys[pos];
+                values[last] = values[pos];
+                stamps[last] = stamps[pos];
+                flags[last] = flags[pos];
+                last = pos;
+            }
+        }
+        flags[last] = 0;
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        long[] oldStamps = stamps;
+        byte[] oldFlags = flags;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if ((oldFlags[i] & USED) == 0) {
+                continue;
+            }
+            int slot = (int) HashCommon.mix(oldKeys[i]) & mask;
+            while ((flags[slot] & USED) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+            stamps[slot] = oldStamps[i];
+            flags[slot] = oldFlags[i];
+        }
+        clockHand = 0;
+    }
+}
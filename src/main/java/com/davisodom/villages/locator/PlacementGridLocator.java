@@ -0,0 +1,262 @@
+package com.davisodom.villages.locator;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.StructureManager;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ChunkGeneratorStructureState;
+import net.minecraft.world.level.chunk.status.ChunkStatus;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructureCheckResult;
+import net.minecraft.world.level.levelgen.structure.StructureSet;
+import net.minecraft.world.level.levelgen.structure.StructureStart;
+import net.minecraft.world.level.levelgen.structure.placement.RandomSpreadStructurePlacement;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Locates structures by walking the placement grid of their structure sets.
+ * <p>
+ * A {@link RandomSpreadStructurePlacement} allows at most one start per spacing-sized
+ * cell, and which chunk of the cell is the candidate is fixed by the level seed. Instead
+ * of probing chunk after chunk, this locator lists the cells overlapping the search area,
+ * computes each cell's candidate chunk and checks it once. A cell's check covers every
+ * structure of interest its set can place, so locating more structure types in the same set
+ * costs nothing extra. Evaluated cells are recorded in the {@link VillageIndex} and are never
+ * checked again.
+ */
+public class PlacementGridLocator {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private final ServerLevel level;
+    private final VillageIndex index;
+    private final long seed;
+    private final List<Target> targets;
+
+    // A structure set to enumerate, with the structures of interest it can place
+    record Target(String setId, StructureSet set, RandomSpreadStructurePlacement placement,
+                  List<Holder<Structure>> structures) {}
+
+    /**
+     * Decides whether a placement cell still needs its candidate computed.
+     */
+    @FunctionalInterface
+    public interface CellFilter {
+        boolean skip(int cellX, int cellZ);
+    }
+
+    /**
+     * Receives the candidate chunk of a placement cell within the search radius.
+     */
+    @FunctionalInterface
+    public interface CandidateVisitor {
+        void visit(int cellX, int cellZ, ChunkPos candidate, BlockPos locatePos);
+    }
+
+    private PlacementGridLocator(ServerLevel level, VillageIndex index, long seed, List<Target> targets) {
+        this.level = level;
+        this.index = index;
+        this.seed = seed;
+        this.targets = targets;
+    }
+
+    /**
+     * Creates a locator for every structure in a tag.
+     *
+     * @return The locator, or null if any structure in the tag uses a placement that cannot
+     *         be enumerated, in which case callers should fall back to a structure search
+     */
+    @Nullable
+    public static PlacementGridLocator forTag(ServerLevel level, VillageIndex index, TagKey<Structure> tag) {
+        ChunkGeneratorStructureState generatorState = level.getChunkSource().getGeneratorState();
+        List<Target> targets = new ArrayList<>();
+
+        for (Holder<StructureSet> set : generatorState.possibleStructureSets()) {
+            List<Holder<Structure>> structures = new ArrayList<>();
+            for (StructureSet.StructureSelectionEntry entry : set.value().structures()) {
+                if (entry.structure().is(tag)) {
+                    structures.add(entry.structure());
+                }
+            }
+            if (structures.isEmpty()) {
+                continue;
+            }
+
+            if (!(set.value().placement() instanceof RandomSpreadStructurePlacement placement)) {
+                LOGGER.debug("Structure set {} does not use random spread placement, cannot locate analytically",
+                    set.getRegisteredName());
+                return null;
+            }
+            targets.add(new Target(set.getRegisteredName(), set.value(), placement, structures));
+        }
+
+        return new PlacementGridLocator(level, index, generatorState.getLevelSeed(), targets);
+    }
+
+    List<Target> targets() {
+        return targets;
+    }
+
+    long seed() {
+        return seed;
+    }
+
+    /**
+     * Returns the number of cell rings needed to cover a search radius.
+     *
+     * @param radius Search radius in blocks
+     */
+    public int maxRing(int radius) {
+        int maxRing = 0;
+        for (Target target : targets) {
+            maxRing = Math.max(maxRing, maxRing(target.placement(), radius));
+        }
+        return maxRing;
+    }
+
+    public static int maxRing(RandomSpreadStructurePlacement placement, int radius) {
+        return (SectionPos.blockToSectionCoord(radius) / placement.spacing()) + 1;
+    }
+
+    /**
+     * Walks one ring of a placement grid around a position, computing the candidate chunk of
+     * each cell from the seed alone. This is the level-independent half of {@link #planRing},
+     * so it can also be driven by benchmarks with a synthetic placement.
+     *
+     * @param filter  Cells it returns true for are skipped before their candidate is computed
+     * @param visitor Called for every remaining cell whose candidate is within the radius
+     */
+    public static void forEachCandidate(RandomSpreadStructurePlacement placement, long seed, BlockPos origin,
+                                        int ring, int radius, CellFilter filter, CandidateVisitor visitor) {
+        long radiusSq = (long) radius * radius;
+        int spacing = placement.spacing();
+        int originCellX = Math.floorDiv(SectionPos.blockToSectionCoord(origin.getX()), spacing);
+        int originCellZ = Math.floorDiv(SectionPos.blockToSectionCoord(origin.getZ()), spacing);
+
+        for (int dx = -ring; dx <= ring; dx++) {
+            // Only the perimeter of the ring; inner cells were visited by earlier rings
+            int step = Math.abs(dx) == ring ? 1 : Math.max(1, 2 * ring);
+            for (int dz = -ring; dz <= ring; dz += step) {
+                int cellX = originCellX + dx;
+                int cellZ = originCellZ + dz;
+                if (filter.skip(cellX, cellZ)) {
+                    continue;
+                }
+
+                ChunkPos candidate = placement.getPotentialStructureChunk(seed, cellX * spacing, cellZ * spacing);
+                BlockPos locatePos = placement.getLocatePos(candidate);
+                long offsetX = locatePos.getX() - origin.getX();
+                long offsetZ = locatePos.getZ() - origin.getZ();
+                if (offsetX * offsetX + offsetZ * offsetZ <= radiusSq) {
+                    visitor.visit(cellX, cellZ, candidate, locatePos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Plans the checks for every unevaluated cell on one ring of the placement grid around a
+     * position. Candidates further away than the search radius are skipped and left unevaluated.
+     * <p>
+     * Planning only reads the index and computes candidates from the seed, so it is safe off
+     * the server thread. The returned units check structure starts and must run on the server thread.
+     *
+     * @param origin The position at the centre of the search
+     * @param ring   The ring to search, counted in cells from the origin's cell
+     * @param radius Search radius in blocks
+     * @return One work unit per candidate to check
+     */
+    public List<Runnable> planRing(BlockPos origin, int ring, int radius) {
+        List<Runnable> units = new ArrayList<>();
+        for (Target target : targets) {
+            forEachCandidate(target.placement(), seed, origin, ring, radius,
+                (cellX, cellZ) -> index.isCellEvaluated(target.setId(), cellX, cellZ),
+                (cellX, cellZ, candidate, locatePos) -> units.add(() -> {
+                    // Another search may have got here first
+                    if (!index.isCellEvaluated(target.setId(), cellX, cellZ)) {
+                        LocatorMetrics.get().recordCellCheck();
+                        Holder<Structure> found = evaluateCandidate(target, candidate);
+                        index.recordCell(target.setId(), cellX, cellZ, indexed(found, locatePos));
+                    }
+                }));
+        }
+        return units;
+    }
+
+    /**
+     * Records what a fully generated chunk reveals about the placement cells it lies in.
+     * Only the candidate chunk of a cell can hold its start, so for almost every chunk this
+     * costs one index lookup and one seeded random draw per structure set.
+     *
+     * @param chunk A chunk whose structure starts are final
+     */
+    public void recordLoadedChunk(ChunkAccess chunk) {
+        ChunkPos chunkPos = chunk.getPos();
+        for (Target target : targets) {
+            int spacing = target.placement().spacing();
+            int cellX = Math.floorDiv(chunkPos.x, spacing);
+            int cellZ = Math.floorDiv(chunkPos.z, spacing);
+            if (index.isCellEvaluated(target.setId(), cellX, cellZ)) {
+                continue;
+            }
+
+            ChunkPos candidate = target.placement().getPotentialStructureChunk(seed, chunkPos.x, chunkPos.z);
+            if (!candidate.equals(chunkPos)) {
+                continue;
+            }
+
+            Holder<Structure> found = null;
+            for (Holder<Structure> structure : target.structures()) {
+                StructureStart start = chunk.getStartForStructure(structure.value());
+                if (start != null && start.isValid()) {
+                    found = structure;
+                    break;
+                }
+            }
+            index.recordCell(target.setId(), cellX, cellZ, indexed(found, target.placement().getLocatePos(candidate)));
+        }
+    }
+
+    @Nullable
+    private static IndexedStructure indexed(@Nullable Holder<Structure> structure, BlockPos locatePos) {
+        if (structure == null) {
+            return null;
+        }
+        return structure.unwrapKey().map(key -> new IndexedStructure(locatePos, key.location())).orElse(null);
+    }
+
+    // Finds which structure of interest, if any, starts in the candidate chunk of a cell
+    @Nullable
+    private Holder<Structure> evaluateCandidate(Target target, ChunkPos candidate) {
+        ChunkGeneratorStructureState generatorState = level.getChunkSource().getGeneratorState();
+        // Frequency reduction and exclusion zones can still rule the candidate out
+        if (!target.placement().isStructureChunk(generatorState, candidate.x, candidate.z)) {
+            return null;
+        }
+
+        StructureManager structureManager = level.structureManager();
+        for (Holder<Structure> structure : target.structures()) {
+            // Biome and known-start checks, without loading the chunk where possible
+            StructureCheckResult result = structureManager.checkStructurePresence(
+                candidate, structure.value(), target.placement(), false);
+            if (result == StructureCheckResult.START_NOT_PRESENT) {
+                continue;
+            }
+
+            ChunkAccess chunk = level.getChunk(candidate.x, candidate.z, ChunkStatus.STRUCTURE_STARTS);
+            StructureStart start = structureManager.getStartForStructure(SectionPos.bottomOf(chunk), structure.value(), chunk);
+            if (start != null && start.isValid()) {
+                return structure;
+            }
+        }
+        return null;
+    }
+}
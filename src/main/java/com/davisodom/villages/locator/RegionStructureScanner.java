@@ -0,0 +1,333 @@
+package com.davisodom.villages.locator;
+
+import com.mojang.logging.LogUtils;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.Util;
+import net.minecraft.core.Holder;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.visitors.CollectFields;
+import net.minecraft.nbt.visitors.FieldSelector;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.status.ChunkStatus;
+import net.minecraft.world.level.chunk.storage.RegionFileVersion;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.storage.LevelResource;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Indexes structures in already generated chunks by reading a level's region files directly.
+ * <p>
+ * Structure starts are saved with every chunk, so an existing world can be indexed without
+ * loading a single chunk. The scanner memory-maps each {@code .mca} file read-only and only
+ * reads the chunks that are placement candidates of an unevaluated cell; everything else in
+ * the file is never touched. Each of those chunks is parsed with a field collector that keeps
+ * only its status and structure starts and stops reading once it has them, so block data is
+ * skipped without being built into tags. The scan runs on an IO worker and hands results to
+ * the server thread one region file at a time, so neither the tick nor the heap grows with
+ * the size of the world.
+ * <p>
+ * Chunks the server hasn't saved yet are picked up by {@link VillageDiscovery} when they
+ * load instead. A chunk that is being rewritten while it is scanned reads as corrupt and is
+ * skipped, leaving its cell to a later search.
+ */
+public class RegionStructureScanner {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final Pattern REGION_FILE = Pattern.compile("^r\\.(-?\\d+)\\.(-?\\d+)\\.mca$");
+    private static final int REGION_CHUNKS = 32;
+    private static final int SECTOR_BYTES = 4096;
+    // Chunk offsets, then timestamps, one int per chunk each
+    private static final int HEADER_BYTES = 2 * SECTOR_BYTES;
+    // A chunk's data length, then its compression type
+    private static final int CHUNK_HEADER_BYTES = 5;
+    // Set on the compression type of chunks too large for the region file, which are stored beside it
+    private static final int EXTERNAL_STREAM_FLAG = 128;
+    // Written in place of a structure start that failed to generate
+    private static final String INVALID_START = "INVALID";
+
+    private static final AtomicBoolean running = new AtomicBoolean();
+
+    private final MinecraftServer server;
+    private final VillageIndex index;
+    private final PlacementGridLocator locator;
+    private final Path regionFolder;
+    private int regionsScanned;
+    private int chunksRead;
+    private int cellsRecorded;
+    private int structuresFound;
+    // Structures new to the index, only touched on the server thread
+    private int discovered;
+
+    /**
+     * @param regions    The number of region files scanned
+     * @param chunks     The number of candidate chunks read from them
+     * @param cells      The number of placement cells recorded in the index
+     * @param structures The number of structures among those cells
+     * @param nanos      How long the scan took
+     */
+    public record Result(int regions, int chunks, int cells, int structures, long nanos) {}
+
+    // A placement cell whose candidate chunk lies in the region file being scanned
+    private record Candidate(PlacementGridLocator.Target target, int cellX, int cellZ, ChunkPos chunk) {}
+
+    private record ScannedCell(String setId, int cellX, int cellZ, @Nullable IndexedStructure structure) {}
+
+    private RegionStructureScanner(MinecraftServer server, VillageIndex index, PlacementGridLocator locator, Path regionFolder) {
+        this.server = server;
+        this.index = index;
+        this.locator = locator;
+        this.regionFolder = regionFolder;
+    }
+
+    /**
+     * Scans every region file of a level in the background. Must be called on the server thread.
+     *
+     * @return A future completed on the server thread once every result is in the index, or
+     *         completed exceptionally if a scan is already running or the level's structures
+     *         can't be located from the placement grid
+     */
+    public static CompletableFuture<Result> scan(ServerLevel level) {
+        PlacementGridLocator locator = PlacementGridLocator.forTag(level, VillageIndex.get(level), VillageIndex.INDEXED);
+        if (locator == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                "Indexed structures in " + level.dimension().location() + " can't be located from the placement grid"));
+        }
+        if (!running.compareAndSet(false, true)) {
+            return CompletableFuture.failedFuture(new IllegalStateException("A region scan is already running"));
+        }
+
+        MinecraftServer server = level.getServer();
+        Path regionFolder = DimensionType.getStorageFolder(level.dimension(), server.getWorldPath(LevelResource.ROOT))
+            .resolve("region");
+        RegionStructureScanner scanner = new RegionStructureScanner(server, VillageIndex.get(level), locator, regionFolder);
+        long started = System.nanoTime();
+        LOGGER.info("Scanning region files in {} for structure starts", regionFolder);
+
+        return CompletableFuture.runAsync(scanner::scanFolder, Util.ioPool())
+            .whenComplete((ignored, error) -> running.set(false))
+            // Queued behind the last region's results, so the index is complete when this runs.
+            // Clients hear about the whole scan at once, even one that failed partway.
+            .whenCompleteAsync((ignored, error) -> scanner.index.notifyDiscovered(scanner.discovered), server)
+            .thenApplyAsync(ignored -> {
+                Result result = new Result(scanner.regionsScanned, scanner.chunksRead, scanner.cellsRecorded,
+                    scanner.structuresFound, System.nanoTime() - started);
+                LOGGER.info("Scanned {} region files and {} chunks, recording {} placement cells with {} structures",
+                    result.regions(), result.chunks(), result.cells(), result.structures());
+                return result;
+            }, server);
+    }
+
+    private void scanFolder() {
+        if (!Files.isDirectory(regionFolder)) {
+            return;
+        }
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(regionFolder)) {
+            files = listing.sorted().toList();
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't list region files in " + regionFolder, e);
+        }
+
+        for (Path file : files) {
+            if (!server.isRunning()) {
+                return;
+            }
+            Matcher matcher = REGION_FILE.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            try {
+                List<ScannedCell> cells = scanRegion(file, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+                regionsScanned++;
+                if (!cells.isEmpty()) {
+                    server.execute(() -> {
+                        // Recorded quietly; a scan can find thousands of structures, far too many to send one by one
+                        for (ScannedCell cell : cells) {
+                            if (index.recordCell(cell.setId(), cell.cellX(), cell.cellZ(), cell.structure(), false)) {
+                                discovered++;
+                            }
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Couldn't scan region file {}", file, e);
+            }
+        }
+    }
+
+    private List<ScannedCell> scanRegion(Path file, int regionX, int regionZ) throws IOException {
+        // Group the candidates by chunk first, so a chunk shared by several structure sets is read once
+        Int2ObjectOpenHashMap<List<Candidate>> candidates = findCandidates(regionX, regionZ);
+        List<ScannedCell> cells = new ArrayList<>();
+        if (candidates.isEmpty()) {
+            return cells;
+        }
+
+        ByteBuffer region = open(file);
+        if (region == null) {
+            return cells;
+        }
+
+        for (Int2ObjectOpenHashMap.Entry<List<Candidate>> entry : candidates.int2ObjectEntrySet()) {
+            List<Candidate> chunkCandidates = entry.getValue();
+            ChunkPos chunk = chunkCandidates.get(0).chunk();
+            CompoundTag fields;
+            try {
+                fields = readStructureFields(file, region, entry.getIntKey(), chunk);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Skipping unreadable chunk {} in {}", chunk, file, e);
+                continue;
+            }
+            chunksRead++;
+            // Starts are only final once the chunk is past the structure starts stage
+            if (fields == null || !fields.contains("structures", Tag.TAG_COMPOUND)
+                || !ChunkStatus.byName(fields.getString("Status")).isOrAfter(ChunkStatus.STRUCTURE_STARTS)) {
+                continue;
+            }
+
+            CompoundTag starts = fields.getCompound("structures").getCompound("starts");
+            for (Candidate candidate : chunkCandidates) {
+                IndexedStructure structure = findStart(candidate, starts);
+                cells.add(new ScannedCell(candidate.target().setId(), candidate.cellX(), candidate.cellZ(), structure));
+                cellsRecorded++;
+                if (structure != null) {
+                    structuresFound++;
+                }
+            }
+        }
+        return cells;
+    }
+
+    // Lists the unevaluated placement cells whose candidate chunk falls within a region file
+    private Int2ObjectOpenHashMap<List<Candidate>> findCandidates(int regionX, int regionZ) {
+        Int2ObjectOpenHashMap<List<Candidate>> candidates = new Int2ObjectOpenHashMap<>();
+        int minChunkX = regionX * REGION_CHUNKS;
+        int minChunkZ = regionZ * REGION_CHUNKS;
+        for (PlacementGridLocator.Target target : locator.targets()) {
+            int spacing = target.placement().spacing();
+            for (int cellX = Math.floorDiv(minChunkX, spacing); cellX <= Math.floorDiv(minChunkX + REGION_CHUNKS - 1, spacing); cellX++) {
+                for (int cellZ = Math.floorDiv(minChunkZ, spacing); cellZ <= Math.floorDiv(minChunkZ + REGION_CHUNKS - 1, spacing); cellZ++) {
+                    ChunkPos chunk = target.placement().getPotentialStructureChunk(locator.seed(), cellX * spacing, cellZ * spacing);
+                    int localX = chunk.x - minChunkX;
+                    int localZ = chunk.z - minChunkZ;
+                    if (localX < 0 || localX >= REGION_CHUNKS || localZ < 0 || localZ >= REGION_CHUNKS
+                        || index.isCellEvaluated(target.setId(), cellX, cellZ)) {
+                        continue;
+                    }
+                    candidates.computeIfAbsent(localX + localZ * REGION_CHUNKS, key -> new ArrayList<>())
+                        .add(new Candidate(target, cellX, cellZ, chunk));
+                }
+            }
+        }
+        return candidates;
+    }
+
+    @Nullable
+    private static IndexedStructure findStart(Candidate candidate, CompoundTag starts) {
+        for (Holder<Structure> structure : candidate.target().structures()) {
+            ResourceLocation type = structure.unwrapKey().map(key -> key.location()).orElse(null);
+            if (type == null) {
+                continue;
+            }
+            CompoundTag start = starts.getCompound(type.toString());
+            if (!start.isEmpty() && !INVALID_START.equals(start.getString("id"))) {
+                return new IndexedStructure(candidate.target().placement().getLocatePos(candidate.chunk()), type);
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static ByteBuffer open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                return null;
+            }
+            if (Util.getPlatform() == Util.OS.WINDOWS) {
+                // Windows won't let the server grow a file while it is mapped, so read a copy instead
+                ByteBuffer copy = ByteBuffer.allocate((int) size);
+                while (copy.hasRemaining() && channel.read(copy) >= 0) {
+                    // Keep reading until the whole file is in
+                }
+                return copy.flip();
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Reads a chunk's status and structure starts from a region file.
+     *
+     * @param chunkIndex The chunk's index in the region file's header
+     * @return The collected fields, or null if the chunk was never saved
+     */
+    @Nullable
+    private static CompoundTag readStructureFields(Path file, ByteBuffer region, int chunkIndex, ChunkPos chunk) throws IOException {
+        int location = region.getInt(chunkIndex * Integer.BYTES);
+        if (location == 0) {
+            return null;
+        }
+        int offset = (location >>> 8) * SECTOR_BYTES;
+        if (offset < HEADER_BYTES || offset + CHUNK_HEADER_BYTES > region.limit()) {
+            throw new IOException("Chunk data lies outside the region file");
+        }
+        int length = region.getInt(offset);
+        int compression = region.get(offset + Integer.BYTES);
+
+        InputStream data;
+        if ((compression & EXTERNAL_STREAM_FLAG) != 0) {
+            compression &= ~EXTERNAL_STREAM_FLAG;
+            data = Files.newInputStream(file.resolveSibling("c." + chunk.x + "." + chunk.z + ".mcc"));
+        } else {
+            if (length <= 1 || offset + Integer.BYTES + length > region.limit()) {
+                throw new IOException("Chunk data is truncated");
+            }
+            data = new ByteBufInputStream(Unpooled.wrappedBuffer(region.slice(offset + CHUNK_HEADER_BYTES, length - 1)));
+        }
+
+        RegionFileVersion version = RegionFileVersion.fromId(compression);
+        if (version == null) {
+            data.close();
+            throw new IOException("Unknown chunk compression " + compression);
+        }
+
+        // Stops reading as soon as both fields have been seen
+        CollectFields collector = new CollectFields(
+            new FieldSelector(StringTag.TYPE, "Status"),
+            new FieldSelector("structures", CompoundTag.TYPE, "starts"));
+        try (DataInputStream input = new DataInputStream(version.wrap(data))) {
+            NbtIo.parse(input, collector, NbtAccounter.unlimitedHeap());
+        }
+        return collector.getResult() instanceof CompoundTag fields ? fields : null;
+    }
+}
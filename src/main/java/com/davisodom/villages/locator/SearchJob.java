@@ -0,0 +1,79 @@
+package com.davisodom.villages.locator;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
+
+/**
+ * A planned village search, split into rings of small work units that are run one at a
+ * time on the server thread by the {@link SearchScheduler}.
+ */
+final class SearchJob {
+    private final List<List<Runnable>> rings;
+    private final Runnable ringComplete;
+    private final IntPredicate satisfied;
+    private final BooleanSupplier cancelled;
+    private final CompletableFuture<Integer> done;
+    private int ring;
+    private int unit;
+    private long ringStarted;
+
+    /**
+     * @param rings        Work units grouped by ring, nearest ring first
+     * @param ringComplete Run after each ring that did any work, so partial results can be reported
+     * @param satisfied    Checked after each ring with the number of rings completed; the job
+     *                     finishes early once it returns true
+     * @param cancelled    Checked before each unit; the job is dropped once it returns true
+     * @param done         Completed with the number of rings that ran when the job finishes, or
+     *                     completed exceptionally if a unit fails
+     */
+    SearchJob(List<List<Runnable>> rings, Runnable ringComplete, IntPredicate satisfied,
+              BooleanSupplier cancelled, CompletableFuture<Integer> done) {
+        this.rings = rings;
+        this.ringComplete = ringComplete;
+        this.satisfied = satisfied;
+        this.cancelled = cancelled;
+        this.done = done;
+    }
+
+    /**
+     * Runs the next unit of work.
+     *
+     * @return true once the job has finished and should not be stepped again
+     */
+    boolean step() {
+        if (cancelled.getAsBoolean()) {
+            done.cancel(false);
+            return true;
+        }
+
+        try {
+            while (ring < rings.size()) {
+                List<Runnable> units = rings.get(ring);
+                if (unit < units.size()) {
+                    if (unit == 0) {
+                        ringStarted = System.nanoTime();
+                    }
+                    units.get(unit++).run();
+                    return false;
+                }
+
+                // Ring complete; report it, and stop early if the nearest villages can no longer change
+                ring++;
+                unit = 0;
+                if (!units.isEmpty()) {
+                    LocatorMetrics.get().recordRingLatency(System.nanoTime() - ringStarted);
+                    ringComplete.run();
+                }
+                if (satisfied.test(ring)) {
+                    break;
+                }
+            }
+            done.complete(ring);
+        } catch (Exception e) {
+            done.completeExceptionally(e);
+        }
+        return true;
+    }
+}
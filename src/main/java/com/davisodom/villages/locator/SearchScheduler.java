@@ -0,0 +1,60 @@
+package com.davisodom.villages.locator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Runs search jobs on the server thread within a fixed time budget per tick.
+ * <p>
+ * Structure checks touch chunk and structure state, so they must run on the server
+ * thread, but running a whole search at once would stall the tick. Instead each tick runs
+ * work units round-robin across all active jobs until the budget is spent, so progress
+ * carries across ticks, every search advances fairly, and tick time stays flat no matter
+ * how many searches are queued.
+ */
+public class SearchScheduler {
+    // Jobs submitted from other threads, picked up at the start of the next tick
+    private final Queue<SearchJob> incoming = new ConcurrentLinkedQueue<>();
+    // Only touched on the server thread
+    private final Deque<SearchJob> active = new ArrayDeque<>();
+
+    void submit(SearchJob job) {
+        incoming.add(job);
+    }
+
+    /**
+     * Runs queued work until the budget is spent. At least one unit runs per tick so
+     * searches always make progress. Must be called on the server thread.
+     *
+     * @param budgetNanos Time budget for this tick in nanoseconds
+     */
+    public void tick(long budgetNanos) {
+        SearchJob job;
+        while ((job = incoming.poll()) != null) {
+            active.addLast(job);
+        }
+
+        long deadline = System.nanoTime() + budgetNanos;
+        while (!active.isEmpty()) {
+            job = active.pollFirst();
+            if (!job.step()) {
+                active.addLast(job);
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+    }
+
+    // Approximate when called off the server thread
+    public int pendingJobs() {
+        return active.size() + incoming.size();
+    }
+
+    void clear() {
+        incoming.clear();
+        active.clear();
+    }
+}
@@ -0,0 +1,261 @@
+package com.davisodom.villages.locator;
+
+import com.davisodom.villages.Config;
+import com.davisodom.villages.Villages;
+import com.mojang.logging.LogUtils;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.biome.BiomeSource;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.minecraft.world.level.chunk.ChunkGeneratorStructureState;
+import net.minecraft.world.level.levelgen.LegacyRandomSource;
+import net.minecraft.world.level.levelgen.RandomState;
+import net.minecraft.world.level.levelgen.WorldgenRandom;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructureSet;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplateManager;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Surveys wide areas for indexed structures in parallel, for operator queries over
+ * thousands of blocks.
+ * <p>
+ * Instead of checking chunks, a survey replays the structure-start stage of world generation
+ * for each unevaluated placement cell: the same placement checks, seeded structure selection
+ * and generation point search that chunk generation runs. That stage only reads the seed, the
+ * biome source, the noise settings and structure templates, which world generation already
+ * reads from many threads at once. Cells are therefore split into fork/join tasks on a
+ * work-stealing pool, so survey time scales with the cores available. Results are recorded in
+ * the {@link VillageIndex} on the server thread once every task has finished, and answered
+ * from it nearest first.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class StructureSurvey {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    // Tasks with this many cells or fewer evaluate them instead of splitting further
+    private static final int TASK_CELLS = 8;
+
+    @Nullable
+    private static volatile ForkJoinPool pool;
+
+    /**
+     * @param structures The structures found, nearest first
+     * @param evaluated  How many placement cells the survey had to evaluate
+     * @param nanos      How long the survey took
+     */
+    public record Result(List<IndexedStructure> structures, int evaluated, long nanos) {}
+
+    // Everything a cell evaluation reads; all of it is read concurrently by world generation too
+    private record GenerationSources(RegistryAccess registryAccess, ChunkGenerator generator, BiomeSource biomeSource,
+                                     RandomState randomState, StructureTemplateManager templates,
+                                     ChunkGeneratorStructureState structureState, long seed,
+                                     LevelHeightAccessor heightAccessor) {}
+
+    private record Cell(PlacementGridLocator.Target target, int cellX, int cellZ, ChunkPos candidate, BlockPos locatePos) {}
+
+    private record CellResult(Cell cell, @Nullable IndexedStructure structure) {}
+
+    /**
+     * Surveys the area around a position. Must be called on the server thread.
+     *
+     * @param tag    The structures to report; only indexed structures can be surveyed
+     * @param radius Survey radius in blocks
+     * @param limit  Maximum number of structures to report
+     * @return A future completed on the server thread, or completed exceptionally if the tag
+     *         can't be surveyed or no server is running
+     */
+    public static CompletableFuture<Result> survey(ServerLevel level, TagKey<Structure> tag, BlockPos origin,
+                                                   int radius, int limit) {
+        long started = System.nanoTime();
+        ForkJoinPool surveyPool = pool;
+        if (surveyPool == null) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("No server is running"));
+        }
+
+        VillageIndex index = VillageIndex.get(level);
+        Set<ResourceLocation> types = VillageIndex.structureTypes(level, tag);
+        PlacementGridLocator locator = PlacementGridLocator.forTag(level, index, VillageIndex.INDEXED);
+        if (locator == null || !VillageIndex.structureTypes(level, VillageIndex.INDEXED).containsAll(types)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                tag.location() + " can't be surveyed from the placement grid"));
+        }
+
+        // Listing the cells only reads the index, so do it here rather than touch the index from workers
+        List<Cell> cells = new ArrayList<>();
+        for (PlacementGridLocator.Target target : locator.targets()) {
+            int maxRing = PlacementGridLocator.maxRing(target.placement(), radius);
+            for (int ring = 0; ring <= maxRing; ring++) {
+                PlacementGridLocator.forEachCandidate(target.placement(), locator.seed(), origin, ring, radius,
+                    (cellX, cellZ) -> index.isCellEvaluated(target.setId(), cellX, cellZ),
+                    (cellX, cellZ, candidate, locatePos) -> cells.add(new Cell(target, cellX, cellZ, candidate, locatePos)));
+            }
+        }
+
+        ChunkGenerator generator = level.getChunkSource().getGenerator();
+        ChunkGeneratorStructureState structureState = level.getChunkSource().getGeneratorState();
+        GenerationSources sources = new GenerationSources(level.registryAccess(), generator, generator.getBiomeSource(),
+            level.getChunkSource().randomState(), level.getServer().getStructureManager(), structureState,
+            structureState.getLevelSeed(), level);
+
+        return CompletableFuture.supplyAsync(() -> new SurveyTask(sources, cells, 0, cells.size()).invoke(), surveyPool)
+            .thenApplyAsync(results -> {
+                // Recorded quietly, then announced once; a survey finds far too much to send one by one
+                int discovered = 0;
+                for (CellResult result : results) {
+                    Cell cell = result.cell();
+                    if (index.recordCell(cell.target().setId(), cell.cellX(), cell.cellZ(), result.structure(), false)) {
+                        discovered++;
+                    }
+                }
+                index.notifyDiscovered(discovered);
+                return new Result(index.findNearest(origin, radius, limit, types), cells.size(), System.nanoTime() - started);
+            }, level.getServer());
+    }
+
+    public static int parallelism() {
+        ForkJoinPool surveyPool = pool;
+        return surveyPool == null ? 0 : surveyPool.getParallelism();
+    }
+
+    // Splits a range of cells in half until it is small enough to evaluate directly
+    private static final class SurveyTask extends RecursiveTask<List<CellResult>> {
+        private final GenerationSources sources;
+        private final List<Cell> cells;
+        private final int start;
+        private final int end;
+
+        SurveyTask(GenerationSources sources, List<Cell> cells, int start, int end) {
+            this.sources = sources;
+            this.cells = cells;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<CellResult> compute() {
+            if (end - start <= TASK_CELLS) {
+                List<CellResult> results = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) {
+                    Cell cell = cells.get(i);
+                    LocatorMetrics.get().recordCellCheck();
+                    results.add(new CellResult(cell, evaluate(sources, cell)));
+                }
+                return results;
+            }
+
+            int middle = (start + end) >>> 1;
+            SurveyTask left = new SurveyTask(sources, cells, start, middle);
+            left.fork();
+            List<CellResult> results = new SurveyTask(sources, cells, middle, end).compute();
+            results.addAll(left.join());
+            return results;
+        }
+    }
+
+    /**
+     * Works out which structure, if any, chunk generation starts in a cell's candidate chunk.
+     * Mirrors the structure-start stage of {@link ChunkGenerator}: sets with several structures
+     * try them in a seeded weighted order, and the first that finds a valid generation point wins.
+     */
+    @Nullable
+    private static IndexedStructure evaluate(GenerationSources sources, Cell cell) {
+        ChunkPos candidate = cell.candidate();
+        // Frequency reduction and exclusion zones can still rule the candidate out
+        if (!cell.target().placement().isStructureChunk(sources.structureState(), candidate.x, candidate.z)) {
+            return null;
+        }
+
+        List<StructureSet.StructureSelectionEntry> entries = new ArrayList<>(cell.target().set().structures());
+        Holder<Structure> generated = null;
+        if (entries.size() == 1) {
+            Holder<Structure> structure = entries.get(0).structure();
+            if (canGenerate(sources, structure, candidate)) {
+                generated = structure;
+            }
+        } else {
+            WorldgenRandom random = new WorldgenRandom(new LegacyRandomSource(0L));
+            random.setLargeFeatureSeed(sources.seed(), candidate.x, candidate.z);
+            int totalWeight = 0;
+            for (StructureSet.StructureSelectionEntry entry : entries) {
+                totalWeight += entry.weight();
+            }
+
+            while (!entries.isEmpty()) {
+                int roll = random.nextInt(totalWeight);
+                int pick = 0;
+                for (StructureSet.StructureSelectionEntry entry : entries) {
+                    roll -= entry.weight();
+                    if (roll < 0) {
+                        break;
+                    }
+                    pick++;
+                }
+
+                StructureSet.StructureSelectionEntry entry = entries.get(pick);
+                if (canGenerate(sources, entry.structure(), candidate)) {
+                    generated = entry.structure();
+                    break;
+                }
+                entries.remove(pick);
+                totalWeight -= entry.weight();
+            }
+        }
+
+        // The cell may hold a structure of the set that isn't indexed
+        if (generated == null || !cell.target().structures().contains(generated)) {
+            return null;
+        }
+        return generated.unwrapKey().map(key -> new IndexedStructure(cell.locatePos(), key.location())).orElse(null);
+    }
+
+    private static boolean canGenerate(GenerationSources sources, Holder<Structure> structure, ChunkPos chunk) {
+        Structure value = structure.value();
+        Structure.GenerationContext context = new Structure.GenerationContext(sources.registryAccess(),
+            sources.generator(), sources.biomeSource(), sources.randomState(), sources.templates(), sources.seed(),
+            chunk, sources.heightAccessor(), value.biomes()::contains);
+        return value.findValidGenerationPoint(context).isPresent();
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        int threads = Config.surveyThreads > 0 ? Config.surveyThreads : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("Villages Survey #" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            // Worker threads otherwise get the system class loader, which can't see mod classes
+            thread.setContextClassLoader(StructureSurvey.class.getClassLoader());
+            return thread;
+        }, null, false);
+        LOGGER.debug("Started structure survey pool with {} threads", threads);
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        ForkJoinPool surveyPool = pool;
+        pool = null;
+        if (surveyPool != null) {
+            surveyPool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.davisodom.villages.locator;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.eventbus.api.Event;
+
+/**
+ * Posted on the Forge event bus once a bulk indexing pass, such as a region scan or a
+ * survey, has added structures to a {@link VillageIndex} without posting a
+ * {@link VillageDiscoveredEvent} for each. Posted on the server thread.
+ */
+public class VillageBatchDiscoveredEvent extends Event {
+    private final ResourceKey<Level> dimension;
+    private final int discovered;
+
+    public VillageBatchDiscoveredEvent(ResourceKey<Level> dimension, int discovered) {
+        this.dimension = dimension;
+        this.discovered = discovered;
+    }
+
+    public ResourceKey<Level> getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return How many structures were new to the index
+     */
+    public int getDiscovered() {
+        return discovered;
+    }
+}
@@ -0,0 +1,28 @@
+package com.davisodom.villages.locator;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.eventbus.api.Event;
+
+/**
+ * Posted on the Forge event bus when a {@link VillageIndex} learns about a structure it
+ * didn't know before, whether from a search or from a loaded chunk. Posted on the server thread.
+ * Bulk indexing posts a single {@link VillageBatchDiscoveredEvent} instead.
+ */
+public class VillageDiscoveredEvent extends Event {
+    private final ResourceKey<Level> dimension;
+    private final IndexedStructure structure;
+
+    public VillageDiscoveredEvent(ResourceKey<Level> dimension, IndexedStructure structure) {
+        this.dimension = dimension;
+        this.structure = structure;
+    }
+
+    public ResourceKey<Level> getDimension() {
+        return dimension;
+    }
+
+    public IndexedStructure getStructure() {
+        return structure;
+    }
+}
@@ -0,0 +1,61 @@
+package com.davisodom.villages.locator;
+
+import com.davisodom.villages.Config;
+import com.davisodom.villages.Villages;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Passively fills in each level's {@link VillageIndex} from chunks as they are generated
+ * or loaded.
+ * <p>
+ * Structure starts are already stored in every full chunk, so recording them as chunks
+ * load costs no extra chunk access. In explored areas this means lookups are answered
+ * without any structure search at all.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class VillageDiscovery {
+    // Only touched on the server thread. Empty when the indexed structures can't be located from the placement grid.
+    private static final Map<ResourceKey<Level>, Optional<PlacementGridLocator>> locators = new HashMap<>();
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        if (!Config.passiveVillageDiscovery) {
+            return;
+        }
+        // Only full chunks have final structure starts
+        if (!(event.getLevel() instanceof ServerLevel level) || !(event.getChunk() instanceof LevelChunk chunk)) {
+            return;
+        }
+
+        locators.computeIfAbsent(level.dimension(), dimension ->
+                Optional.ofNullable(PlacementGridLocator.forTag(level, VillageIndex.get(level), VillageIndex.INDEXED)))
+            .ifPresent(locator -> locator.recordLoadedChunk(chunk));
+    }
+
+    @SubscribeEvent
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        // A datapack reload can change which structures are indexed and whether the grid can place them
+        if (event.getUpdateCause() == TagsUpdatedEvent.UpdateCause.SERVER_DATA_LOAD) {
+            locators.clear();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLevelUnload(LevelEvent.Unload event) {
+        if (event.getLevel() instanceof ServerLevel level) {
+            locators.remove(level.dimension());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.davisodom.villages.locator;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.core.BlockPos;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * A 2D spatial index of village positions, bucketed into fixed-size regions.
+ * <p>
+ * Nearest-neighbour queries visit buckets ring by ring outwards from the query point
+ * and stop as soon as no unvisited bucket can hold a closer village, so the cost depends
+ * on the local village density rather than the total number of villages known.
+ * Positions are stored packed in primitive lists, one per non-empty bucket.
+ */
+public class VillageGrid {
+    // Each bucket covers a 256x256 block region
+    private static final int BUCKET_SHIFT = 8;
+    private static final int BUCKET_SIZE = 1 << BUCKET_SHIFT;
+
+    private final Long2ObjectOpenHashMap<LongArrayList> buckets = new Long2ObjectOpenHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private int size;
+
+    private record Candidate(long distanceSq, long pos) {}
+
+    /**
+     * Adds a packed village position to the grid.
+     *
+     * @return true if the position was not already present
+     */
+    public boolean add(long packedPos) {
+        long key = bucketKey(BlockPos.getX(packedPos) >> BUCKET_SHIFT, BlockPos.getZ(packedPos) >> BUCKET_SHIFT);
+        lock.writeLock().lock();
+        try {
+            LongArrayList bucket = buckets.computeIfAbsent(key, k -> new LongArrayList(1));
+            // Buckets hold a handful of villages at most, so a linear scan is fine
+            if (bucket.contains(packedPos)) {
+                return false;
+            }
+            bucket.add(packedPos);
+            size++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void forEach(LongConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            for (LongArrayList bucket : buckets.values()) {
+                bucket.forEach(consumer);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimates the heap used by the buckets and their contents.
+     */
+    public long estimateMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            // Bucket table, plus a list object and its backing array per bucket
+            long bytes = 16L * buckets.size() * 2;
+            for (Long2ObjectMap.Entry<LongArrayList> entry : buckets.long2ObjectEntrySet()) {
+                bytes += 32 + (long) Long.BYTES * entry.getValue().elements().length;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the villages closest to a point, measured horizontally.
+     *
+     * @param x      Block x of the query point
+     * @param z      Block z of the query point
+     * @param radius Maximum distance in blocks
+     * @param limit  Maximum number of villages to return
+     * @return Up to {@code limit} villages within {@code radius}, nearest first
+     */
+    public List<BlockPos> findNearest(int x, int z, int radius, int limit) {
+        List<Candidate> candidates = new ArrayList<>();
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        long radiusSq = (long) radius * radius;
+        int centerX = x >> BUCKET_SHIFT;
+        int centerZ = z >> BUCKET_SHIFT;
+        int maxRing = (radius >> BUCKET_SHIFT) + 1;
+
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return new ArrayList<>();
+            }
+
+            for (int ring = 0; ring <= maxRing; ring++) {
+                for (int dx = -ring; dx <= ring; dx++) {
+                    // Only visit the perimeter of the ring; inner buckets were covered by earlier rings
+                    int step = Math.abs(dx) == ring ? 1 : Math.max(1, 2 * ring);
+                    for (int dz = -ring; dz <= ring; dz += step) {
+                        LongArrayList bucket = buckets.get(bucketKey(centerX + dx, centerZ + dz));
+                        if (bucket == null) {
+                            continue;
+                        }
+                        for (int i = 0; i < bucket.size(); i++) {
+                            long pos = bucket.getLong(i);
+                            long offsetX = BlockPos.getX(pos) - x;
+                            long offsetZ = BlockPos.getZ(pos) - z;
+                            long distanceSq = offsetX * offsetX + offsetZ * offsetZ;
+                            if (distanceSq <= radiusSq) {
+                                candidates.add(new Candidate(distanceSq, pos));
+                            }
+                        }
+                    }
+                }
+
+                // Anything in a later ring is at least ring * BUCKET_SIZE blocks away
+                if (candidates.size() >= limit) {
+                    candidates.sort(Comparator.comparingLong(Candidate::distanceSq));
+                    long bound = (long) ring * BUCKET_SIZE;
+                    if (candidates.get(limit - 1).distanceSq() <= bound * bound) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        candidates.sort(Comparator.comparingLong(Candidate::distanceSq));
+        List<BlockPos> nearest = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (int i = 0; i < candidates.size() && i < limit; i++) {
+            nearest.add(BlockPos.of(candidates.get(i).pos()));
+        }
+        return nearest;
+    }
+
+    private static long bucketKey(int bucketX, int bucketZ) {
+        return (long) bucketX & 0xFFFFFFFFL | ((long) bucketZ & 0xFFFFFFFFL) << 32;
+    }
+}
@@ -0,0 +1,376 @@
+package com.davisodom.villages.locator;
+
+import com.davisodom.villages.Config;
+import com.davisodom.villages.Villages;
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraftforge.common.MinecraftForge;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent per-level record of structure lookups for every indexed structure type.
+ * <p>
+ * The structures to index are listed in the {@code villages:indexed} structure tag, so
+ * outposts and datapack villages are recorded alongside vanilla villages. Structure
+ * locations are fixed once a world is generated, so the result of every structure search
+ * is kept here and saved alongside the level. The index is loaded lazily the first time a
+ * level is queried and marked dirty as structures are discovered, so repeat lookups never
+ * go back to a cold structure search.
+ * <p>
+ * Known structures are held in one {@link VillageGrid} per structure type for
+ * nearest-neighbour queries, which are filtered by tag. The index also tracks which regions
+ * and placement cells have been searched, so that only uncovered areas ever need a
+ * structure search. Placement cells are shared by every indexed structure in a structure
+ * set, so indexing more types doesn't multiply the work. Search results are kept as packed
+ * longs in {@link PackedLongMap}s, with {@link #NO_VILLAGE} shared by every empty result.
+ * <p>
+ * Found structures are permanent. Empty results are cheap to re-derive, so each one carries
+ * its own age: it expires after the configured TTL and is evicted least-recently-used
+ * first once the level holds more than the configured number of entries.
+ */
+public class VillageIndex extends SavedData {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String DATA_NAME = Villages.MODID + "_village_index";
+    private static final int DATA_VERSION = 6;
+
+    // The structures recorded by the index
+    public static final TagKey<Structure> INDEXED =
+        TagKey.create(Registries.STRUCTURE, ResourceLocation.fromNamespaceAndPath(Villages.MODID, "indexed"));
+
+    // Coverage regions span 4x4 chunks
+    public static final int REGION_SHIFT = 2;
+    public static final int REGION_SIZE = 1 << REGION_SHIFT;
+
+    // Stored for searched areas with no structure. Long.MIN_VALUE unpacks to
+    // x = -33554432, which lies well outside the world border.
+    public static final long NO_VILLAGE = Long.MIN_VALUE;
+    // Returned for areas that have never been searched; unpacks outside the world border too
+    private static final long UNKNOWN = Long.MAX_VALUE;
+
+    private static final SavedData.Factory<VillageIndex> FACTORY =
+        new SavedData.Factory<>(VillageIndex::new, VillageIndex::load, null);
+
+    // Structure id -> known structures of that type
+    private final Map<ResourceLocation, VillageGrid> structures = new ConcurrentHashMap<>();
+    // Probed tag id -> packed region coordinates -> packed structure found by probing the region
+    private final Map<String, PackedLongMap> regionResults = new ConcurrentHashMap<>();
+    // Structure set id -> packed cell coordinates -> packed structure starting in the cell
+    private final Map<String, PackedLongMap> cellResults = new ConcurrentHashMap<>();
+    // The level the index belongs to, for discovery events; set whenever the index is looked up
+    @Nullable
+    private ResourceKey<Level> dimension;
+
+    public VillageIndex() {}
+
+    /**
+     * Returns the index for a level, loading it from disk on first access.
+     * Must be called on the server thread, as the level's data storage is not thread-safe.
+     *
+     * @param level The level to get the index for
+     * @return The structure index for the level
+     */
+    public static VillageIndex get(ServerLevel level) {
+        VillageIndex index = level.getDataStorage().computeIfAbsent(FACTORY, DATA_NAME);
+        index.dimension = level.dimension();
+        return index;
+    }
+
+    /**
+     * Returns a level's index only if it already exists, without creating and saving an empty one.
+     */
+    @Nullable
+    public static VillageIndex getIfExists(ServerLevel level) {
+        VillageIndex index = level.getDataStorage().get(FACTORY, DATA_NAME);
+        if (index != null) {
+            index.dimension = level.dimension();
+        }
+        return index;
+    }
+
+    /**
+     * Returns the ids of the structures in a tag, for filtering queries.
+     */
+    public static Set<ResourceLocation> structureTypes(ServerLevel level, TagKey<Structure> tag) {
+        Set<ResourceLocation> types = new HashSet<>();
+        level.registryAccess().lookupOrThrow(Registries.STRUCTURE).get(tag).ifPresent(structures -> {
+            for (Holder<Structure> structure : structures) {
+                structure.unwrapKey().ifPresent(key -> types.add(key.location()));
+            }
+        });
+        return types;
+    }
+
+    /**
+     * @param tagId The tag the region was probed for
+     */
+    public boolean isRegionCovered(String tagId, int regionX, int regionZ) {
+        PackedLongMap regions = regionResults.get(tagId);
+        return regions != null && regions.containsKey(ChunkPos.asLong(regionX, regionZ), System.currentTimeMillis(), ttlMillis());
+    }
+
+    /**
+     * Records the result of probing a region for a tag.
+     *
+     * @param tagId     The tag the region was probed for
+     * @param structure The structure found by the probe, or null if there was none
+     */
+    public void recordRegion(String tagId, int regionX, int regionZ, @Nullable IndexedStructure structure) {
+        PackedLongMap regions = regionResults.computeIfAbsent(tagId, id -> new PackedLongMap(UNKNOWN));
+        record(regions, ChunkPos.asLong(regionX, regionZ), structure, true);
+    }
+
+    public boolean isCellEvaluated(String setId, int cellX, int cellZ) {
+        PackedLongMap cells = cellResults.get(setId);
+        return cells != null && cells.containsKey(ChunkPos.asLong(cellX, cellZ), System.currentTimeMillis(), ttlMillis());
+    }
+
+    /**
+     * Records the result of evaluating a placement cell of a structure set.
+     *
+     * @param setId     The registry id of the structure set
+     * @param structure The indexed structure that starts in the cell, or null if there is none
+     */
+    public void recordCell(String setId, int cellX, int cellZ, @Nullable IndexedStructure structure) {
+        recordCell(setId, cellX, cellZ, structure, true);
+    }
+
+    /**
+     * Records the result of evaluating a placement cell of a structure set, optionally without
+     * posting a {@link VillageDiscoveredEvent}. Bulk indexing records without notifying, then
+     * calls {@link #notifyDiscovered} once for the whole batch.
+     *
+     * @param notify Whether to post an event if the structure is new
+     * @return Whether the structure was new to the index
+     */
+    public boolean recordCell(String setId, int cellX, int cellZ, @Nullable IndexedStructure structure, boolean notify) {
+        PackedLongMap cells = cellResults.computeIfAbsent(setId, id -> new PackedLongMap(UNKNOWN));
+        return record(cells, ChunkPos.asLong(cellX, cellZ), structure, notify);
+    }
+
+    /**
+     * Posts one {@link VillageBatchDiscoveredEvent} for structures recorded without notifying.
+     *
+     * @param discovered How many of them were new to the index; nothing is posted if none were
+     */
+    public void notifyDiscovered(int discovered) {
+        if (discovered > 0 && dimension != null) {
+            MinecraftForge.EVENT_BUS.post(new VillageBatchDiscoveredEvent(dimension, discovered));
+        }
+    }
+
+    private boolean record(PackedLongMap results, long key, @Nullable IndexedStructure structure, boolean notify) {
+        long value = structure != null ? structure.pos().asLong() : NO_VILLAGE;
+        results.put(key, value, structure != null, System.currentTimeMillis());
+        boolean discovered = structure != null
+            && structures.computeIfAbsent(structure.type(), type -> new VillageGrid()).add(value);
+        if (discovered && notify && dimension != null) {
+            MinecraftForge.EVENT_BUS.post(new VillageDiscoveredEvent(dimension, structure));
+        }
+        // Always dirty, since even an unchanged result has a new age to save
+        setDirty();
+        return discovered;
+    }
+
+    /**
+     * Finds the known structures of some types nearest to a position.
+     *
+     * @param origin The position to search from
+     * @param radius Maximum horizontal distance in blocks
+     * @param limit  Maximum number of structures to return
+     * @param types  Structure ids to include
+     * @return Known structures within the radius, nearest first
+     */
+    public List<IndexedStructure> findNearest(BlockPos origin, int radius, int limit, Set<ResourceLocation> types) {
+        List<IndexedStructure> nearest = new ArrayList<>();
+        for (ResourceLocation type : types) {
+            VillageGrid grid = structures.get(type);
+            if (grid == null) {
+                continue;
+            }
+            for (BlockPos pos : grid.findNearest(origin.getX(), origin.getZ(), radius, limit)) {
+                nearest.add(new IndexedStructure(pos, type));
+            }
+        }
+
+        // Each grid is already trimmed to the limit, so this merge only sorts a few entries
+        nearest.sort(Comparator.comparingLong(structure -> horizontalDistanceSq(origin, structure.pos())));
+        return nearest.size() > limit ? new ArrayList<>(nearest.subList(0, limit)) : nearest;
+    }
+
+    private static long horizontalDistanceSq(BlockPos a, BlockPos b) {
+        long dx = a.getX() - b.getX();
+        long dz = a.getZ() - b.getZ();
+        return dx * dx + dz * dz;
+    }
+
+    /**
+     * Drops expired empty results, then evicts the least recently used ones until the
+     * index is back within its entry budget. The budget is shared across the region and
+     * cell maps in proportion to their size.
+     *
+     * @return The number of entries removed
+     */
+    public int evictStale() {
+        List<PackedLongMap> maps = new ArrayList<>(cellResults.values());
+        maps.addAll(regionResults.values());
+        long total = 0;
+        for (PackedLongMap results : maps) {
+            total += results.size();
+        }
+
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (PackedLongMap results : maps) {
+            int budget = total <= Config.villageIndexMaxEntries
+                ? Integer.MAX_VALUE
+                : (int) ((long) Config.villageIndexMaxEntries * results.size() / total);
+            removed += results.evict(budget, now, ttlMillis());
+        }
+        if (removed > 0) {
+            setDirty();
+        }
+        return removed;
+    }
+
+    private static long ttlMillis() {
+        return Config.villageIndexEntryTtlMinutes * 60_000L;
+    }
+
+    public int entryCount() {
+        int count = 0;
+        for (PackedLongMap regions : regionResults.values()) {
+            count += regions.size();
+        }
+        for (PackedLongMap cells : cellResults.values()) {
+            count += cells.size();
+        }
+        return count;
+    }
+
+    public int structureCount() {
+        int count = 0;
+        for (VillageGrid grid : structures.values()) {
+            count += grid.size();
+        }
+        return count;
+    }
+
+    /**
+     * Estimates the heap used by the index, for diagnostics.
+     */
+    public long estimateMemoryBytes() {
+        long bytes = 0;
+        for (VillageGrid grid : structures.values()) {
+            bytes += grid.estimateMemoryBytes();
+        }
+        for (PackedLongMap regions : regionResults.values()) {
+            bytes += regions.estimateMemoryBytes();
+        }
+        for (PackedLongMap cells : cellResults.values()) {
+            bytes += cells.estimateMemoryBytes();
+        }
+        return bytes;
+    }
+
+    public static VillageIndex load(CompoundTag tag, HolderLookup.Provider registries) {
+        VillageIndex index = new VillageIndex();
+        int version = tag.getInt("Version");
+        if (version != DATA_VERSION) {
+            LOGGER.warn("Discarding village index with unsupported version {}", version);
+            return index;
+        }
+
+        CompoundTag structures = tag.getCompound("Structures");
+        for (String type : structures.getAllKeys()) {
+            ResourceLocation id = ResourceLocation.tryParse(type);
+            if (id == null) {
+                LOGGER.warn("Skipping structures of invalid type {} in village index", type);
+                continue;
+            }
+            VillageGrid grid = index.structures.computeIfAbsent(id, key -> new VillageGrid());
+            for (long pos : structures.getLongArray(type)) {
+                grid.add(pos);
+            }
+        }
+        CompoundTag regions = tag.getCompound("Regions");
+        for (String tagId : regions.getAllKeys()) {
+            loadResults(index.regionResults.computeIfAbsent(tagId, id -> new PackedLongMap(UNKNOWN)), regions.getCompound(tagId));
+        }
+        CompoundTag cells = tag.getCompound("Cells");
+        for (String setId : cells.getAllKeys()) {
+            loadResults(index.cellResults.computeIfAbsent(setId, id -> new PackedLongMap(UNKNOWN)), cells.getCompound(setId));
+        }
+        LOGGER.debug("Loaded village index with {} structures of {} types, {} search results (~{} KiB)",
+            index.structureCount(), index.structures.size(), index.entryCount(), index.estimateMemoryBytes() / 1024);
+        return index;
+    }
+
+    private static void loadResults(PackedLongMap results, CompoundTag tag) {
+        long[] keys = tag.getLongArray("Keys");
+        long[] values = tag.getLongArray("Values");
+        long[] stamps = tag.getLongArray("Stamps");
+        if (keys.length != values.length || keys.length != stamps.length) {
+            LOGGER.warn("Skipping corrupt village index entries ({} keys, {} values, {} stamps)",
+                keys.length, values.length, stamps.length);
+            return;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            results.put(keys[i], values[i], values[i] != NO_VILLAGE, stamps[i]);
+        }
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag, HolderLookup.Provider registries) {
+        tag.putInt("Version", DATA_VERSION);
+
+        // Structures are saved by type; search results only record where has been searched
+        CompoundTag structureTag = new CompoundTag();
+        structures.forEach((type, grid) -> {
+            LongArrayList positions = new LongArrayList(grid.size());
+            grid.forEach(positions::add);
+            structureTag.putLongArray(type.toString(), positions.toLongArray());
+        });
+        tag.put("Structures", structureTag);
+
+        CompoundTag regions = new CompoundTag();
+        regionResults.forEach((tagId, tagRegions) -> regions.put(tagId, saveResults(tagRegions)));
+        tag.put("Regions", regions);
+
+        CompoundTag cells = new CompoundTag();
+        cellResults.forEach((setId, setCells) -> cells.put(setId, saveResults(setCells)));
+        tag.put("Cells", cells);
+        return tag;
+    }
+
+    private static CompoundTag saveResults(PackedLongMap results) {
+        long[][] snapshot = results.snapshot();
+        CompoundTag tag = new CompoundTag();
+        tag.putLongArray("Keys", snapshot[0]);
+        tag.putLongArray("Values", snapshot[1]);
+        // Pinned flags aren't saved, since only found structures are pinned
+        tag.putLongArray("Stamps", snapshot[2]);
+        return tag;
+    }
+}
@@ -0,0 +1,165 @@
+package com.davisodom.villages.locator;
+
+import com.davisodom.villages.Config;
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.HolderSet;
+import net.minecraft.core.SectionPos;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.levelgen.structure.Structure;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plans structure searches that fill in the {@link VillageIndex}.
+ * <p>
+ * Structures are located from the placement grid when possible, evaluating every indexed
+ * structure set in the same pass whatever the query is for. Otherwise the search falls
+ * back to probing uncovered regions for the queried tag with {@code findNearestMapStructure},
+ * which is far more expensive and therefore capped at a small radius.
+ * <p>
+ * Planning only reads the index, so it can run off the server thread once the structures to
+ * search for have been {@linkplain #resolve resolved} on it. The planned work units touch chunk
+ * and structure state and are run by the {@link SearchScheduler}.
+ */
+public class VillageLocator {
+    /**
+     * What a search for a tag looks for, read from the registries while they can't change
+     * underneath it.
+     *
+     * @param types       The ids of the structures in the tag
+     * @param gridLocator The placement grid locator covering the tag, or null if the tag has to be probed for
+     * @param structures  The structures in the tag, or null if the tag is unknown
+     */
+    public record SearchTarget(TagKey<Structure> tag, Set<ResourceLocation> types,
+                               @Nullable PlacementGridLocator gridLocator, @Nullable HolderSet<Structure> structures) {}
+
+    /**
+     * Resolves the structures a search for a tag looks for. Must be called on the server
+     * thread, as {@code /reload} rebinds tag contents there.
+     */
+    public static SearchTarget resolve(ServerLevel level, VillageIndex index, TagKey<Structure> tag) {
+        Set<ResourceLocation> types = VillageIndex.structureTypes(level, tag);
+        // The grid pass only finds indexed structures, so other tags have to be probed for
+        boolean indexed = VillageIndex.structureTypes(level, VillageIndex.INDEXED).containsAll(types);
+        PlacementGridLocator gridLocator = Config.analyticVillageLocator && indexed
+            ? PlacementGridLocator.forTag(level, index, VillageIndex.INDEXED)
+            : null;
+        HolderSet<Structure> structures = level.registryAccess().lookupOrThrow(Registries.STRUCTURE).get(tag).orElse(null);
+        return new SearchTarget(tag, Set.copyOf(types), gridLocator, structures);
+    }
+
+    /**
+     * The work planned for a search, with how far around its origin each stage of it is
+     * known to be complete.
+     *
+     * @param rings         Work units grouped by ring, nearest ring first. Rings that are already
+     *                      fully covered by the index are empty.
+     * @param ringWidth     How far apart consecutive rings are, in blocks, at their closest
+     * @param coveredRadius How far around the origin everything is known once every ring has run
+     */
+    public record SearchPlan(List<List<Runnable>> rings, int ringWidth, int coveredRadius) {
+        /**
+         * Returns how far around the origin every structure is known once some rings have run.
+         * Anything in a ring not yet run lies at least this far away.
+         *
+         * @param completedRings How many rings, nearest first, have run
+         */
+        public int provenRadius(int completedRings) {
+            if (completedRings >= rings.size()) {
+                return coveredRadius;
+            }
+            // Ring n starts at most one ring width past the edge of the origin's own cell
+            return (int) Math.min(coveredRadius, Math.max(0L, (long) (completedRings - 1) * ringWidth));
+        }
+    }
+
+    /**
+     * Plans the work needed to cover the area around a position.
+     *
+     * @param target The structures being searched for
+     * @param origin The position to search from
+     * @param radius Search radius in blocks
+     */
+    public static SearchPlan planSearch(ServerLevel level, VillageIndex index, SearchTarget target,
+                                        BlockPos origin, int radius) {
+        List<List<Runnable>> rings = new ArrayList<>();
+        PlacementGridLocator gridLocator = target.gridLocator();
+        if (gridLocator != null) {
+            int maxRing = gridLocator.maxRing(radius);
+            for (int ring = 0; ring <= maxRing; ring++) {
+                rings.add(gridLocator.planRing(origin, ring, radius));
+            }
+            // Every structure set advances a ring at a time, so the one with the finest grid bounds the distance
+            int spacing = Integer.MAX_VALUE;
+            for (PlacementGridLocator.Target gridTarget : gridLocator.targets()) {
+                spacing = Math.min(spacing, gridTarget.placement().spacing());
+            }
+            int ringWidth = spacing == Integer.MAX_VALUE ? radius : spacing << 4;
+            return new SearchPlan(rings, ringWidth, radius);
+        }
+
+        // Convert search radius to regions, but limit to a smaller radius for speed
+        int chunkRadius = Math.min((radius >> 4) + 1, Config.maxProbeChunkRadius);
+        int regionRadius = (chunkRadius + VillageIndex.REGION_SIZE - 1) >> VillageIndex.REGION_SHIFT;
+        for (int ring = 0; ring <= regionRadius; ring++) {
+            rings.add(planRegionRing(level, index, target, origin, ring));
+        }
+        int regionBlocks = VillageIndex.REGION_SIZE << 4;
+        return new SearchPlan(rings, regionBlocks, Math.min(radius, regionRadius * regionBlocks));
+    }
+
+    private static List<Runnable> planRegionRing(ServerLevel level, VillageIndex index, SearchTarget target,
+                                                 BlockPos origin, int ring) {
+        List<Runnable> units = new ArrayList<>();
+        int originRegionX = SectionPos.blockToSectionCoord(origin.getX()) >> VillageIndex.REGION_SHIFT;
+        int originRegionZ = SectionPos.blockToSectionCoord(origin.getZ()) >> VillageIndex.REGION_SHIFT;
+        String tagId = target.tag().location().toString();
+        HolderSet<Structure> structures = target.structures();
+        if (structures == null) {
+            return units;
+        }
+
+        // Only search the perimeter at this ring (not the inner area which earlier rings cover)
+        for (int dx = -ring; dx <= ring; dx++) {
+            int step = Math.abs(dx) == ring ? 1 : Math.max(1, 2 * ring);
+            for (int dz = -ring; dz <= ring; dz += step) {
+                int regionX = originRegionX + dx;
+                int regionZ = originRegionZ + dz;
+
+                // Regions searched before, possibly in an earlier session, are answered by the index
+                if (index.isRegionCovered(tagId, regionX, regionZ)) {
+                    continue;
+                }
+
+                units.add(() -> {
+                    if (index.isRegionCovered(tagId, regionX, regionZ)) {
+                        return;
+                    }
+
+                    // Probe from the centre chunk of the region
+                    int chunkX = (regionX << VillageIndex.REGION_SHIFT) + VillageIndex.REGION_SIZE / 2;
+                    int chunkZ = (regionZ << VillageIndex.REGION_SHIFT) + VillageIndex.REGION_SIZE / 2;
+                    BlockPos reference = new BlockPos(chunkX << 4, origin.getY(), chunkZ << 4);
+                    LocatorMetrics.get().recordProbe();
+                    Pair<BlockPos, Holder<Structure>> nearest = level.getChunkSource().getGenerator()
+                        .findNearestMapStructure(level, structures, reference, 16, false);
+
+                    // Record the result, including misses and structures beyond the search radius
+                    IndexedStructure found = nearest == null ? null : nearest.getSecond().unwrapKey()
+                        .map(key -> new IndexedStructure(nearest.getFirst(), key.location()))
+                        .orElse(null);
+                    index.recordRegion(tagId, regionX, regionZ, found);
+                });
+            }
+        }
+        return units;
+    }
+}
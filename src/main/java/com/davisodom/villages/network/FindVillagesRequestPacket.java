@@ -1,68 +1,102 @@
 package com.davisodom.villages.network;
 
 import com.davisodom.villages.Config;
+import com.davisodom.villages.locator.IndexedStructure;
+import com.davisodom.villages.locator.LocatorMetrics;
+import com.davisodom.villages.locator.LocatorService;
+import com.davisodom.villages.locator.VillageIndex;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.registries.Registries;
 import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
-import net.minecraft.tags.StructureTags;
 import net.minecraft.core.SectionPos;
-import net.minecraft.core.Registry;
-import net.minecraft.core.registries.Registries;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.levelgen.structure.Structure;
 
+import javax.annotation.Nullable;
+
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Iterator;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import org.slf4j.Logger;
-import com.mojang.logging.LogUtils;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 public class FindVillagesRequestPacket {
-    private static final Logger LOGGER = LogUtils.getLogger();
-    
-    // Cache for village positions (server-side)
-    private static final Map<ServerLevel, Map<ChunkPos, List<BlockPos>>> villageCache = new ConcurrentHashMap<>();
-    private static final Map<ServerLevel, Long> cacheTimestamps = new ConcurrentHashMap<>();
-    private static final long CACHE_DURATION = 60000; // Cache valid for 1 minute
-    
-    // Represents a chunk position
-    private static class ChunkPos {
-        final int x;
-        final int z;
-        
-        ChunkPos(int x, int z) {
-            this.x = x;
-            this.z = z;
-        }
-        
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof ChunkPos other) {
-                return this.x == other.x && this.z == other.z;
-            }
-            return false;
-        }
-        
-        @Override
-        public int hashCode() {
-            return 31 * x + z;
+    // Chosen by the client and echoed in every response, so stale results can be told apart
+    private final int requestId;
+    // Requested search radius in blocks and result count; the server clamps both to its own limits
+    private final int radius;
+    private final int maxResults;
+    // The structures to search for
+    private final TagKey<Structure> structures;
+    // A circle the client already knows every village in, so they needn't be sent again
+    @Nullable
+    private final Exclusion exclude;
+
+    public record Exclusion(int x, int z, int radius) {
+        boolean contains(BlockPos pos) {
+            long dx = pos.getX() - x;
+            long dz = pos.getZ() - z;
+            return dx * dx + dz * dz <= (long) radius * radius;
         }
     }
 
-    public FindVillagesRequestPacket() {}
+    public FindVillagesRequestPacket(int requestId, int radius, int maxResults, TagKey<Structure> structures,
+                                     @Nullable Exclusion exclude) {
+        this.requestId = requestId;
+        this.radius = radius;
+        this.maxResults = maxResults;
+        this.structures = structures;
+        this.exclude = exclude;
+    }
 
-    public void encode(FriendlyByteBuf buf) {}
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeVarInt(requestId);
+        buf.writeVarInt(radius);
+        buf.writeVarInt(maxResults);
+        buf.writeResourceLocation(structures.location());
+        buf.writeBoolean(exclude != null);
+        if (exclude != null) {
+            buf.writeInt(exclude.x());
+            buf.writeInt(exclude.z());
+            buf.writeVarInt(exclude.radius());
+        }
+    }
 
     public static FindVillagesRequestPacket decode(FriendlyByteBuf buf) {
-        return new FindVillagesRequestPacket();
+        int requestId = buf.readVarInt();
+        int radius = buf.readVarInt();
+        int maxResults = buf.readVarInt();
+        TagKey<Structure> structures = TagKey.create(Registries.STRUCTURE, buf.readResourceLocation());
+        Exclusion exclude = buf.readBoolean() ? new Exclusion(buf.readInt(), buf.readInt(), buf.readVarInt()) : null;
+        return new FindVillagesRequestPacket(requestId, radius, maxResults, structures, exclude);
     }
 
     public void handle(ServerPlayer player) {
+        handle(player, response -> NetworkHandler.sendToPlayer(response, player));
+    }
+
+    /**
+     * Handles the request on the server thread.
+     *
+     * @param reply Sends a response to the requester; always called on the server thread
+     */
+    public void handle(ServerPlayer player, Consumer<VillageResponsePacket> reply) {
         if (player != null) {
+            // Admit the request before doing any work for it; a flooding client only gets cheap rejections
+            if (!RequestLimiter.tryAcquire(player.getUUID())) {
+                LocatorMetrics.get().recordRejected(LocatorMetrics.Rejection.RATE_LIMITED);
+                reply.accept(new VillageResponsePacket(requestId, VillageResponsePacket.Status.RATE_LIMITED));
+                return;
+            }
+            
+            long admitted = System.nanoTime();
             ServerLevel level = player.serverLevel();
             BlockPos playerPos = player.blockPosition();
             
@@ -71,22 +105,95 @@ public class FindVillagesRequestPacket {
             
             if (!hasGeneratedChunks) {
                 // World isn't generated yet, send immediate response
-                NetworkHandler.sendToPlayer(new VillageResponsePacket(new ArrayList<>(), true), player);
+                reply.accept(new VillageResponsePacket(requestId, VillageResponsePacket.Status.NEW_WORLD));
                 return;
             }
             
-            // Process in the background to avoid server lag
-            CompletableFuture.runAsync(() -> {
-                List<BlockPos> villages = findNearbyVillages(level, playerPos);
+            // Only tags the server indexes may be searched for
+            if (!Config.locatableStructureTags.contains(structures)) {
+                LocatorMetrics.get().recordRejected(LocatorMetrics.Rejection.UNSUPPORTED);
+                reply.accept(new VillageResponsePacket(requestId, VillageResponsePacket.Status.UNSUPPORTED));
+                return;
+            }
+            
+            LocatorService locator = LocatorService.get();
+            if (locator == null) {
+                // No locator is running, so nothing can answer; tell the client rather than leave it waiting
+                LocatorMetrics.get().recordRejected(LocatorMetrics.Rejection.UNAVAILABLE);
+                reply.accept(new VillageResponsePacket(requestId, VillageResponsePacket.Status.UNSUPPORTED));
+                return;
+            }
+            
+            // Clamp the request to the server's limits
+            int searchRadius = Math.max(1, Math.min(radius, Config.maxSearchRadius));
+            int searchResults = Math.max(1, Math.min(maxResults, Config.maxSearchResults));
+            
+            // Resolve the index on the server thread; the level's data storage isn't thread-safe
+            VillageIndex index = VillageIndex.get(level);
+            
+            // Villages already sent for this request; only touched on the server thread
+            Set<BlockPos> sent = new HashSet<>();
+            ChunkPos anchor = new ChunkPos(playerPos);
+            
+            // Search on the locator pool to avoid server lag; this supersedes any earlier search by the player.
+            // Villages are streamed to the player as each ring of the search completes.
+            CompletableFuture<LocatorService.SearchResult> search;
+            try {
+                search = locator.submit(player.getUUID(), level, index, structures, playerPos, searchRadius, searchResults,
+                    villages -> sendNew(player, reply, anchor, villages, sent, false, searchRadius, searchResults));
+            } catch (RejectedExecutionException e) {
+                LocatorMetrics.get().recordRejected(LocatorMetrics.Rejection.BUSY);
+                reply.accept(new VillageResponsePacket(requestId, VillageResponsePacket.Status.BUSY));
+                return;
+            }
+            
+            search.whenComplete((result, error) -> {
+                if (error instanceof CancellationException) {
+                    // Superseded by a newer request, or the player left
+                    return;
+                }
                 
-                // Schedule response to be sent on the main thread
+                // Schedule the final batch to be sent on the main thread, after any progress batches
+                // Report only the radius the search proved complete; a failed search covered nothing
+                List<IndexedStructure> found = error == null ? result.structures() : new ArrayList<>();
+                int coveredRadius = error == null ? result.provenRadius() : 0;
                 level.getServer().execute(() -> {
-                    NetworkHandler.sendToPlayer(new VillageResponsePacket(villages, false), player);
+                    sendNew(player, reply, anchor, found, sent, true, coveredRadius, searchResults);
+                    LocatorMetrics.get().recordSearchLatency(System.nanoTime() - admitted);
                 });
             });
         }
     }
     
+    // Sends the villages the player hasn't been told about yet. The final batch is always sent, even if empty.
+    private void sendNew(ServerPlayer player, Consumer<VillageResponsePacket> reply, ChunkPos anchor,
+                         List<IndexedStructure> villages, Set<BlockPos> sent, boolean done, int searchRadius, int searchResults) {
+        List<BlockPos> batch = new ArrayList<>();
+        List<IndexedStructure> batchStructures = new ArrayList<>();
+        for (IndexedStructure village : villages) {
+            if (exclude != null && exclude.contains(village.pos())) {
+                // The client already has it
+                continue;
+            }
+            if (sent.add(village.pos())) {
+                batch.add(village.pos());
+                batchStructures.add(village);
+            }
+        }
+        if (!batch.isEmpty() || done) {
+            // Types are sent as dictionary ids, with names only the first time the connection sees them
+            StructureTypeDictionary dictionary = StructureTypeDictionary.forPlayer(player.getUUID());
+            List<ResourceLocation> newTypeNames = new ArrayList<>();
+            int[] typeIds = new int[batchStructures.size()];
+            for (int i = 0; i < typeIds.length; i++) {
+                typeIds[i] = dictionary.idFor(batchStructures.get(i).type(), newTypeNames);
+            }
+            // Positions are sent relative to the chunk the player searched from
+            reply.accept(new VillageResponsePacket(requestId, VillageResponsePacket.Status.FOUND, done,
+                searchRadius, searchResults, anchor, batch, typeIds, newTypeNames));
+        }
+    }
+    
     // Check if the world has generated enough to search for villages
     private boolean isWorldGenerated(ServerLevel level, BlockPos playerPos) {
         // Check if chunks around player are generated
@@ -107,139 +214,4 @@ public class FindVillagesRequestPacket {
         
         return true;
     }
-    
-    private List<BlockPos> findNearbyVillages(ServerLevel level, BlockPos playerPos) {
-        List<BlockPos> villages = new ArrayList<>();
-        
-        // Check if we have a valid cache for this level
-        boolean cacheValid = false;
-        
-        Long lastUpdate = cacheTimestamps.get(level);
-        if (lastUpdate != null && (System.currentTimeMillis() - lastUpdate) < CACHE_DURATION) {
-            cacheValid = true;
-        }
-        
-        // Create cache entry if needed
-        if (!villageCache.containsKey(level)) {
-            villageCache.put(level, new HashMap<>());
-        }
-        
-        // Convert search radius to chunks, but limit to a smaller radius for speed
-        int chunkRadius = Math.min((Config.villageSearchRadius >> 4) + 1, 8);
-        int playerChunkX = SectionPos.blockToSectionCoord(playerPos.getX());
-        int playerChunkZ = SectionPos.blockToSectionCoord(playerPos.getZ());
-        
-        // Prioritize nearest chunks first - start with smaller radius
-        for (int radius = 1; radius <= chunkRadius; radius++) {
-            List<BlockPos> foundInRadius = searchChunkRadius(level, playerPos, playerChunkX, playerChunkZ, radius, cacheValid);
-            villages.addAll(foundInRadius);
-            
-            // If we've found at least a few villages, we can return early for better responsiveness
-            if (villages.size() >= 3) {
-                break;
-            }
-        }
-        
-        // Update cache timestamp
-        cacheTimestamps.put(level, System.currentTimeMillis());
-        
-        return villages;
-    }
-    
-    private List<BlockPos> searchChunkRadius(ServerLevel level, BlockPos playerPos, int playerChunkX, int playerChunkZ, 
-                                            int radius, boolean cacheValid) {
-        List<BlockPos> villages = new ArrayList<>();
-        
-        // Only search the perimeter at this radius (not the inner area which we've already searched)
-        for (int dx = -radius; dx <= radius; dx++) {
-            for (int dz = -radius; dz <= radius; dz++) {
-                // Skip chunks that aren't on the perimeter
-                if (Math.abs(dx) != radius && Math.abs(dz) != radius) {
-                    continue;
-                }
-                
-                int chunkX = playerChunkX + dx;
-                int chunkZ = playerChunkZ + dz;
-                ChunkPos chunkPos = new ChunkPos(chunkX, chunkZ);
-                
-                List<BlockPos> cachedVillages = null;
-                
-                // Check if we have a valid cache for this chunk
-                if (cacheValid) {
-                    cachedVillages = villageCache.get(level).get(chunkPos);
-                }
-                
-                if (cachedVillages != null) {
-                    // Use cached data
-                    for (BlockPos pos : cachedVillages) {
-                        double distance = Math.sqrt(pos.distSqr(playerPos));
-                        if (distance <= Config.villageSearchRadius && !villages.contains(pos)) {
-                            villages.add(pos);
-                        }
-                    }
-                } else {
-                    // Need to query this chunk
-                    BlockPos reference = new BlockPos(chunkX << 4, playerPos.getY(), chunkZ << 4);
-                    BlockPos nearest = level.findNearestMapStructure(StructureTags.VILLAGE, reference, 16, false);
-                    
-                    if (nearest != null) {
-                        double distance = Math.sqrt(nearest.distSqr(playerPos));
-                        if (distance <= Config.villageSearchRadius && !villages.contains(nearest)) {
-                            villages.add(nearest);
-                            
-                            // Store in cache
-                            List<BlockPos> chunkVillages = new ArrayList<>();
-                            chunkVillages.add(nearest);
-                            villageCache.get(level).put(chunkPos, chunkVillages);
-                        }
-                    } else {
-                        // Cache negative result too
-                        villageCache.get(level).put(chunkPos, new ArrayList<>());
-                    }
-                }
-            }
-        }
-        
-        return villages;
-    }
-    
-    /**
-     * Clears cached data for a specific level when it's unloaded
-     * to prevent memory leaks on long-running servers.
-     *
-     * @param level The server level being unloaded
-     */
-    public static void clearCacheForLevel(ServerLevel level) {
-        if (level == null) {
-            return;
-        }
-        
-        Map<ChunkPos, List<BlockPos>> removed = villageCache.remove(level);
-        Long timestamp = cacheTimestamps.remove(level);
-        
-        if (removed != null || timestamp != null) {
-            LOGGER.debug("Cleared village cache for unloaded level: {}", 
-                level.dimension().location());
-        }
-    }
-    
-    /**
-     * Performs a cleanup of all expired cache entries.
-     * Can be called periodically to ensure memory doesn't grow too much.
-     */
-    public static void cleanupExpiredCaches() {
-        long currentTime = System.currentTimeMillis();
-        long maxAge = CACHE_DURATION * 2; // Clear entries older than twice the cache duration
-        
-        Iterator<Map.Entry<ServerLevel, Long>> it = cacheTimestamps.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<ServerLevel, Long> entry = it.next();
-            if (currentTime - entry.getValue() > maxAge) {
-                villageCache.remove(entry.getKey());
-                it.remove();
-                LOGGER.debug("Cleared expired village cache for level: {}", 
-                    entry.getKey().dimension().location());
-            }
-        }
-    }
-}
\ No newline at end of file
+}
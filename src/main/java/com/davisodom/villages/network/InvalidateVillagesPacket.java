@@ -0,0 +1,81 @@
+package com.davisodom.villages.network;
+
+import com.davisodom.villages.ClientVillageCache;
+import io.netty.handler.codec.DecoderException;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells clients that the server discovered structures, so any cached area that claimed
+ * to hold no such structure there is stale. Clients can't tell which structure tags the
+ * structures belong to, so they drop the stale areas of every tag in the dimension.
+ * When too much was discovered to list, the packet carries no positions and every cached
+ * area in the dimension is dropped.
+ */
+public class InvalidateVillagesPacket {
+    // Most positions one packet lists; beyond this the whole dimension is invalidated instead
+    public static final int MAX_STRUCTURES = 256;
+
+    private final ResourceKey<Level> dimension;
+    // Null to invalidate the whole dimension
+    @Nullable
+    private final List<BlockPos> structures;
+
+    public InvalidateVillagesPacket(ResourceKey<Level> dimension, @Nullable List<BlockPos> structures) {
+        this.dimension = dimension;
+        this.structures = structures;
+    }
+
+    /**
+     * Creates a packet that invalidates every cached area in a dimension.
+     */
+    public static InvalidateVillagesPacket all(ResourceKey<Level> dimension) {
+        return new InvalidateVillagesPacket(dimension, null);
+    }
+
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeResourceKey(dimension);
+        buf.writeBoolean(structures == null);
+        if (structures != null) {
+            buf.writeVarInt(structures.size());
+            for (BlockPos structure : structures) {
+                buf.writeBlockPos(structure);
+            }
+        }
+    }
+
+    public static InvalidateVillagesPacket decode(FriendlyByteBuf buf) {
+        ResourceKey<Level> dimension = buf.readResourceKey(Registries.DIMENSION);
+        if (buf.readBoolean()) {
+            return all(dimension);
+        }
+        int count = buf.readVarInt();
+        if (count < 0 || count > MAX_STRUCTURES) {
+            throw new DecoderException("Too many structures in village invalidation: " + count);
+        }
+        List<BlockPos> structures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            structures.add(buf.readBlockPos());
+        }
+        return new InvalidateVillagesPacket(dimension, structures);
+    }
+
+    public void handle() {
+        DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> {
+            if (structures == null) {
+                ClientVillageCache.invalidateAll(dimension);
+            } else {
+                ClientVillageCache.invalidate(dimension, structures);
+            }
+        });
+    }
+}
@@ -1,8 +1,10 @@
 package com.davisodom.villages.network;
 
 import com.davisodom.villages.Villages;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.Level;
 import net.minecraftforge.network.ChannelBuilder;
 import net.minecraftforge.network.PacketDistributor;
 import net.minecraftforge.network.SimpleChannel;
@@ -23,7 +25,7 @@ public class NetworkHandler {
     
     public static final SimpleChannel INSTANCE = ChannelBuilder
         .named(createResourceLocation(Villages.MODID, "main"))
-        .networkProtocolVersion(1)
+        .networkProtocolVersion(7)
         .simpleChannel();
 
     public static void register() {
@@ -43,6 +45,12 @@ public class NetworkHandler {
             .decoder(VillageResponsePacket::decode)
             .consumerMainThread((packet, context) -> packet.handle())
             .add();
+        
+        INSTANCE.messageBuilder(InvalidateVillagesPacket.class)
+            .encoder(InvalidateVillagesPacket::encode)
+            .decoder(InvalidateVillagesPacket::decode)
+            .consumerMainThread((packet, context) -> packet.handle())
+            .add();
     }
 
     public static void sendToServer(Object packet) {
@@ -52,4 +60,8 @@ public class NetworkHandler {
     public static void sendToPlayer(Object packet, ServerPlayer player) {
         INSTANCE.send(packet, PacketDistributor.PLAYER.with(player));
     }
+
+    public static void sendToDimension(Object packet, ResourceKey<Level> dimension) {
+        INSTANCE.send(packet, PacketDistributor.DIMENSION.with(dimension));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.davisodom.villages.network;
+
+import com.davisodom.villages.Config;
+import com.davisodom.villages.Villages;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-player token buckets limiting how often search requests are admitted.
+ * <p>
+ * Client-side throttling can't be trusted, so every request spends a token here before any
+ * search work starts. Tokens refill at the configured rate up to the configured burst.
+ * Only touched on the server thread, where request packets are handled.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class RequestLimiter {
+    private static final Map<UUID, Bucket> buckets = new HashMap<>();
+
+    private static final class Bucket {
+        double tokens;
+        long lastRefill;
+
+        Bucket(long now) {
+            this.tokens = Config.searchRequestBurst;
+            this.lastRefill = now;
+        }
+    }
+
+    /**
+     * Spends a token for a request, if the player has one.
+     *
+     * @return true if the request may proceed
+     */
+    public static boolean tryAcquire(UUID player) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.computeIfAbsent(player, uuid -> new Bucket(now));
+
+        double elapsedSeconds = (now - bucket.lastRefill) / 1_000_000_000.0;
+        bucket.tokens = Math.min(Config.searchRequestBurst, bucket.tokens + elapsedSeconds * Config.searchRequestsPerSecond);
+        bucket.lastRefill = now;
+
+        if (bucket.tokens < 1) {
+            return false;
+        }
+        bucket.tokens--;
+        return true;
+    }
+
+    /**
+     * Forgets a requester that never logs out, such as a simulated player.
+     */
+    public static void forget(UUID player) {
+        buckets.remove(player);
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        forget(event.getEntity().getUUID());
+    }
+}
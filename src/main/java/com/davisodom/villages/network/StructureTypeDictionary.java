@@ -0,0 +1,63 @@
+package com.davisodom.villages.network;
+
+import com.davisodom.villages.Villages;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Assigns small per-connection ids to structure types, so responses only send a type's
+ * name the first time it is used on a connection. The client keeps the matching list of
+ * names in {@link com.davisodom.villages.ClientVillageSearch}.
+ * <p>
+ * Only touched on the server thread, where response packets are built.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class StructureTypeDictionary {
+    private static final Map<UUID, StructureTypeDictionary> dictionaries = new HashMap<>();
+
+    private final Object2IntMap<ResourceLocation> ids = new Object2IntOpenHashMap<>();
+
+    private StructureTypeDictionary() {
+        ids.defaultReturnValue(-1);
+    }
+
+    public static StructureTypeDictionary forPlayer(UUID player) {
+        return dictionaries.computeIfAbsent(player, uuid -> new StructureTypeDictionary());
+    }
+
+    /**
+     * Returns the id of a structure type, assigning the next free id if it has none yet.
+     *
+     * @param newNames Names of newly assigned ids are appended here, in id order
+     */
+    public int idFor(ResourceLocation type, List<ResourceLocation> newNames) {
+        int id = ids.getInt(type);
+        if (id < 0) {
+            id = ids.size();
+            ids.put(type, id);
+            newNames.add(type);
+        }
+        return id;
+    }
+
+    /**
+     * Forgets a requester that never logs out, such as a simulated player.
+     */
+    public static void forget(UUID player) {
+        dictionaries.remove(player);
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        forget(event.getEntity().getUUID());
+    }
+}
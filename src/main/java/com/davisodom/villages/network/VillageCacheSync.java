@@ -0,0 +1,71 @@
+package com.davisodom.villages.network;
+
+import com.davisodom.villages.Villages;
+import com.davisodom.villages.locator.VillageBatchDiscoveredEvent;
+import com.davisodom.villages.locator.VillageDiscoveredEvent;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps client village caches honest by pushing newly discovered structures to the players
+ * in their dimension. Discoveries made in one tick are sent together at the end of it, one
+ * packet per dimension, and a tick that discovers more than a packet lists invalidates the
+ * whole dimension instead. Bulk indexing, such as region scans and surveys, finds far too
+ * much to list and always invalidates the whole dimension once it finishes. Only touched
+ * on the server thread.
+ */
+@Mod.EventBusSubscriber(modid = Villages.MODID)
+public class VillageCacheSync {
+    // Discovered this tick, by dimension
+    private static final Map<ResourceKey<Level>, Set<BlockPos>> pending = new HashMap<>();
+    // Dimensions to invalidate entirely this tick
+    private static final Set<ResourceKey<Level>> pendingAll = new HashSet<>();
+
+    @SubscribeEvent
+    public static void onVillageDiscovered(VillageDiscoveredEvent event) {
+        pending.computeIfAbsent(event.getDimension(), dimension -> new LinkedHashSet<>())
+            .add(event.getStructure().pos());
+    }
+
+    @SubscribeEvent
+    public static void onVillageBatchDiscovered(VillageBatchDiscoveredEvent event) {
+        pendingAll.add(event.getDimension());
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) {
+            return;
+        }
+        pending.forEach((dimension, structures) -> {
+            if (structures.size() > InvalidateVillagesPacket.MAX_STRUCTURES) {
+                pendingAll.add(dimension);
+            } else if (!pendingAll.contains(dimension)) {
+                NetworkHandler.sendToDimension(new InvalidateVillagesPacket(dimension, new ArrayList<>(structures)), dimension);
+            }
+        });
+        pending.clear();
+        for (ResourceKey<Level> dimension : pendingAll) {
+            NetworkHandler.sendToDimension(InvalidateVillagesPacket.all(dimension), dimension);
+        }
+        pendingAll.clear();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        pending.clear();
+        pendingAll.clear();
+    }
+}
@@ -1,64 +1,220 @@
 package com.davisodom.villages.network;
 
-import com.davisodom.villages.util.DirectionHelper;
+import com.davisodom.villages.ClientVillageSearch;
+import com.davisodom.villages.Config;
+import io.netty.handler.codec.DecoderException;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.ChatFormatting;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.fml.DistExecutor;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.ArrayList;
 
+/**
+ * A batch of search results sent to the client.
+ * <p>
+ * Results are encoded compactly: positions are zigzag varints relative to the requester's
+ * chunk, counted in chunks when every position is chunk-aligned, and Y is only written when
+ * some position needs it. Structure types are sent as small ids from a per-connection
+ * {@link StructureTypeDictionary}, with names only sent the first time an id is used.
+ */
 public class VillageResponsePacket {
+    // Bumped whenever the encoding changes
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int FLAG_DONE = 1;
+    private static final int FLAG_HAS_Y = 2;
+    private static final int FLAG_CHUNK_ALIGNED = 4;
+    private static final int FLAG_HAS_TYPES = 8;
+
+    public enum Status {
+        FOUND,
+        NEW_WORLD,  // The world isn't generated yet
+        BUSY,       // The server has too many searches queued
+        RATE_LIMITED, // The player is requesting searches too quickly
+        UNSUPPORTED // The server doesn't allow searching for the requested structures
+    }
+
+    private final int requestId;
+    private final Status status;
+    // Set on the last batch of a request
+    private final boolean done;
+    // Positions are encoded relative to this chunk, normally the one the requester was in
+    private final ChunkPos anchor;
     private final List<BlockPos> villagePositions;
-    private final boolean isNewWorld;  // Flag to indicate if world isn't generated yet
+    // Dictionary ids of each position's structure type, or null if types aren't sent
+    @Nullable
+    private final int[] typeIds;
+    // Names for dictionary ids first used by this packet, in id order
+    private final List<ResourceLocation> newTypeNames;
+    // The radius the server proved complete and the result count it used, sent with the last batch; 0 if no search ran
+    private final int searchedRadius;
+    private final int searchedLimit;
 
-    public VillageResponsePacket(List<BlockPos> villagePositions, boolean isNewWorld) {
+    public VillageResponsePacket(int requestId, Status status) {
+        this(requestId, status, true, 0, 0, new ChunkPos(0, 0), List.of(), null, List.of());
+    }
+
+    public VillageResponsePacket(int requestId, Status status, boolean done, int searchedRadius, int searchedLimit,
+                                 ChunkPos anchor, List<BlockPos> villagePositions,
+                                 @Nullable int[] typeIds, List<ResourceLocation> newTypeNames) {
+        this.requestId = requestId;
+        this.status = status;
+        this.done = done;
+        this.searchedRadius = searchedRadius;
+        this.searchedLimit = searchedLimit;
+        this.anchor = anchor;
         this.villagePositions = villagePositions;
-        this.isNewWorld = isNewWorld;
+        this.typeIds = typeIds;
+        this.newTypeNames = newTypeNames;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isDone() {
+        return done;
     }
 
     public void encode(FriendlyByteBuf buf) {
-        buf.writeBoolean(isNewWorld);
-        
-        if (villagePositions != null) {
-            buf.writeBoolean(true);
-            buf.writeInt(villagePositions.size());
-            for (BlockPos pos : villagePositions) {
-                buf.writeBlockPos(pos);
+        boolean hasY = false;
+        boolean chunkAligned = true;
+        for (BlockPos pos : villagePositions) {
+            hasY |= pos.getY() != 0;
+            chunkAligned &= (pos.getX() & 15) == 0 && (pos.getZ() & 15) == 0;
+        }
+
+        int flags = (done ? FLAG_DONE : 0) | (hasY ? FLAG_HAS_Y : 0)
+            | (chunkAligned ? FLAG_CHUNK_ALIGNED : 0) | (typeIds != null ? FLAG_HAS_TYPES : 0);
+        buf.writeByte(FORMAT_VERSION);
+        buf.writeVarInt(requestId);
+        buf.writeEnum(status);
+        buf.writeByte(flags);
+        writeSignedVarInt(buf, anchor.x);
+        writeSignedVarInt(buf, anchor.z);
+        if (done) {
+            buf.writeVarInt(searchedRadius);
+            buf.writeVarInt(searchedLimit);
+        }
+
+        if (typeIds != null) {
+            buf.writeVarInt(newTypeNames.size());
+            for (ResourceLocation name : newTypeNames) {
+                buf.writeResourceLocation(name);
+            }
+        }
+
+        int originX = anchor.getMinBlockX();
+        int originZ = anchor.getMinBlockZ();
+        int shift = chunkAligned ? 4 : 0;
+        buf.writeVarInt(villagePositions.size());
+        for (int i = 0; i < villagePositions.size(); i++) {
+            BlockPos pos = villagePositions.get(i);
+            writeSignedVarInt(buf, (pos.getX() - originX) >> shift);
+            writeSignedVarInt(buf, (pos.getZ() - originZ) >> shift);
+            if (hasY) {
+                writeSignedVarInt(buf, pos.getY());
+            }
+            if (typeIds != null) {
+                buf.writeVarInt(typeIds[i]);
             }
-        } else {
-            buf.writeBoolean(false);
         }
     }
 
     public static VillageResponsePacket decode(FriendlyByteBuf buf) {
-        boolean isNewWorld = buf.readBoolean();
-        
-        if (buf.readBoolean()) {
-            int count = buf.readInt();
-            List<BlockPos> positions = new ArrayList<>();
-            for (int i = 0; i < count; i++) {
-                positions.add(buf.readBlockPos());
+        int version = buf.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new DecoderException("Unsupported village response format " + version);
+        }
+        int requestId = buf.readVarInt();
+        Status status = buf.readEnum(Status.class);
+        int flags = buf.readUnsignedByte();
+        ChunkPos anchor = new ChunkPos(readSignedVarInt(buf), readSignedVarInt(buf));
+        boolean done = (flags & FLAG_DONE) != 0;
+        int searchedRadius = done ? buf.readVarInt() : 0;
+        int searchedLimit = done ? buf.readVarInt() : 0;
+        boolean hasY = (flags & FLAG_HAS_Y) != 0;
+        boolean hasTypes = (flags & FLAG_HAS_TYPES) != 0;
+
+        List<ResourceLocation> newTypeNames = new ArrayList<>();
+        if (hasTypes) {
+            int newTypes = buf.readVarInt();
+            if (newTypes < 0 || newTypes > Config.SEARCH_RESULTS_CAP) {
+                throw new DecoderException("Too many new structure types in village response: " + newTypes);
             }
-            return new VillageResponsePacket(positions, isNewWorld);
+            for (int i = 0; i < newTypes; i++) {
+                newTypeNames.add(buf.readResourceLocation());
+            }
+        }
+
+        int originX = anchor.getMinBlockX();
+        int originZ = anchor.getMinBlockZ();
+        int shift = (flags & FLAG_CHUNK_ALIGNED) != 0 ? 4 : 0;
+        int count = buf.readVarInt();
+        // No server sends more than a search can return, so anything larger is malformed
+        if (count < 0 || count > Config.SEARCH_RESULTS_CAP) {
+            throw new DecoderException("Too many villages in village response: " + count);
         }
-        return new VillageResponsePacket(null, isNewWorld);
+        List<BlockPos> positions = new ArrayList<>(count);
+        int[] typeIds = hasTypes ? new int[count] : null;
+        for (int i = 0; i < count; i++) {
+            int x = originX + (readSignedVarInt(buf) << shift);
+            int z = originZ + (readSignedVarInt(buf) << shift);
+            int y = hasY ? readSignedVarInt(buf) : 0;
+            positions.add(new BlockPos(x, y, z));
+            if (typeIds != null) {
+                typeIds[i] = buf.readVarInt();
+            }
+        }
+        return new VillageResponsePacket(requestId, status, done, searchedRadius, searchedLimit,
+            anchor, positions, typeIds, newTypeNames);
+    }
+
+    // Zigzag encoding keeps small negative offsets small on the wire
+    private static void writeSignedVarInt(FriendlyByteBuf buf, int value) {
+        buf.writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    private static int readSignedVarInt(FriendlyByteBuf buf) {
+        int value = buf.readVarInt();
+        return (value >>> 1) ^ -(value & 1);
     }
 
     public void handle() {
         DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> {
+            // Keep the type dictionary in sync even for batches that are about to be dropped
+            ClientVillageSearch.defineStructureTypes(newTypeNames);
+            
             Minecraft minecraft = Minecraft.getInstance();
             Player player = minecraft.player;
             if (player == null) {
                 return;
             }
             
-            if (isNewWorld) {
+            // Merge the batch into the current search, dropping results for superseded requests
+            boolean firstBatch = ClientVillageSearch.foundCount() == 0;
+            List<BlockPos> added = ClientVillageSearch.merge(requestId, villagePositions);
+            if (added == null) {
+                return;
+            }
+            if (done) {
+                ClientVillageSearch.finish(requestId, searchedRadius, searchedLimit);
+            }
+            
+            if (status == Status.NEW_WORLD) {
                 // For new worlds without much generation
                 player.displayClientMessage(
                     Component.literal("No villages found yet. The world is still generating.").withStyle(ChatFormatting.YELLOW),
@@ -67,32 +223,35 @@ public class VillageResponsePacket {
                 return;
             }
             
-            if (villagePositions != null && !villagePositions.isEmpty()) {
+            if (status == Status.UNSUPPORTED) {
                 player.displayClientMessage(
-                    Component.literal("=== Nearby Villages ===").withStyle(ChatFormatting.GREEN), 
+                    Component.literal("The server doesn't allow searching for that structure.").withStyle(ChatFormatting.YELLOW),
                     false
                 );
-
-                // Sort villages by distance, nearest first for faster reading
-                List<BlockPos> sortedVillages = new ArrayList<>(villagePositions);
-                sortedVillages.sort((a, b) -> {
-                    double distA = DirectionHelper.getDistance(player, a);
-                    double distB = DirectionHelper.getDistance(player, b);
-                    return Double.compare(distA, distB);
-                });
-
-                for (BlockPos pos : sortedVillages) {
-                    player.displayClientMessage(
-                        DirectionHelper.formatVillageInfo(player, pos),
-                        false
-                    );
-                }
-            } else {
+                return;
+            }
+            
+            if (status == Status.RATE_LIMITED) {
+                player.displayClientMessage(
+                    Component.literal("Searching too frequently. Wait a moment.").withStyle(ChatFormatting.GRAY),
+                    false
+                );
+                return;
+            }
+            
+            if (status == Status.BUSY) {
                 player.displayClientMessage(
-                    Component.literal("No villages found within search radius.").withStyle(ChatFormatting.GOLD),
+                    Component.literal("The server is busy searching. Try again in a moment.").withStyle(ChatFormatting.YELLOW),
                     false
                 );
+                return;
+            }
+            
+            if (!added.isEmpty()) {
+                ClientVillageSearch.showVillages(player, added, firstBatch);
+            } else if (done && ClientVillageSearch.foundCount() == 0) {
+                ClientVillageSearch.showNoVillages(player);
             }
         });
     }
-}
\ No newline at end of file
+}
@@ -16,8 +16,11 @@ public class DirectionHelper {
     }
 
     public static String getDirectionTowards(Player player, BlockPos target) {
-        double dx = target.getX() - player.getX();
-        double dz = target.getZ() - player.getZ();
+        return getDirectionTowards(target.getX() - player.getX(), target.getZ() - player.getZ());
+    }
+
+    // Returns a constant from the direction table, so it is safe to call every frame
+    public static String getDirectionTowards(double dx, double dz) {
         double angle = Math.toDegrees(Math.atan2(-dx, dz));
         // Convert to 0-360 range
         angle = (angle + 360) % 360;
@@ -25,6 +28,13 @@ public class DirectionHelper {
         return CARDINAL_DIRECTIONS[index];
     }
 
+    // Cheaper than getDistance when only comparing distances
+    public static double getDistanceSq(Player player, BlockPos target) {
+        double dx = target.getX() - player.getX();
+        double dz = target.getZ() - player.getZ();
+        return dx * dx + dz * dz;
+    }
+
     public static double getDistance(Player player, BlockPos target) {
         double dx = target.getX() - player.getX();
         double dz = target.getZ() - player.getZ();